@@ -5,8 +5,10 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * Implementation of a B+ tree to allow efficient access to many different indexes of a large data
@@ -51,85 +53,148 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
      */
     @Override
     public void insert(K key, V value) {
-        Node newRoot = insertHelper(root, key, value);// calls insertHelper
+        Node newRoot = root.insert(key, value);// inserts down from the root
         if (newRoot != null) {
             root = newRoot;
         }
     }
 
     /**
-     * helper method to decide where to go from an interalNode
+     * Deletes one pair with the key and a value equal to the given value. A node that falls
+     * below half full borrows a key from a sibling, or is merged with one, and the leaf links
+     * are kept in order. Only the leaves that can hold the key are searched.
      * 
-     * @param node InternalNode
-     * @param key key
-     * @param value value
-     * @return null or InternalNode depending if it split
+     * @param key key of the pair
+     * @param value value of the pair, compared with equals
+     * @return true if the pair was found and deleted, false if it is not in the tree
      */
-    @SuppressWarnings("unchecked")
-    private Node insertHelper(InternalNode node, K key, V value) {
-        int i = 0;
-        for (i = 0; i < node.keys.size(); i++) {// iterates through this nodes keys to find out
-                                                // where we need to go next
-            if (node.keys.get(i).compareTo(key) >= 0) {
-                break;
-            }
+    public boolean delete(K key, V value) {
+        if (key == null || !root.delete(key, value)) {
+            return false;
         }
-        // calls insert helper on the node that is located at the location we found to search
-        InternalNode recur = (InternalNode) insertHelper(node.children.get(i), key, value);
-
-        if (recur == null) {// if nothing was returned that means it didn't split so return null
-            return null;
-        }
-        node.keys.add(i, recur.keys.get(0));// add the key if it did split
-        node.children.remove(i);// remove the child that was split
-        for (int j = 0; j < recur.children.size(); j++) {// iterate through the new children and add
-                                                         // them to our current children
-            Node temp = recur.children.get(j);
-            node.children.add(i + j, temp);
-        }
-        if (node.isOverflow()) {// if it's unbalanced now then return a split version of it
-            return node.split();
+        if (root instanceof BPTree.InternalNode && root.keys.isEmpty()) {
+            root = ((InternalNode) root).children.get(0);// the root has one child, shrink a level
         }
+        return true;
+    }
 
-        return null;
+    /**
+     * Binary searches for the first key that is greater than or equal to the key, so among
+     * duplicates the leftmost one is found
+     * 
+     * @param keys sorted keys of a node
+     * @param key key to find
+     * @return index of the first key >= key, keys.size() if there is none
+     */
+    private int lowerBound(List<K> keys, K key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys.get(middle).compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
 
     /**
-     * helper method that deals with a LeafNode
+     * Binary searches for the first key that is greater than the key, so it is just after the
+     * last duplicate
      * 
-     * @param node Leaf node
-     * @param key key
-     * @param value value
-     * @return null or an Internal node depending if it split
+     * @param keys sorted keys of a node
+     * @param key key to find
+     * @return index of the first key > key, keys.size() if there is none
      */
-    @SuppressWarnings("unchecked")
-    private Node insertHelper(LeafNode node, K key, V value) {// baseCase of recursion
-        node.insert(key, value);
-        if (node.isOverflow()) {// split up and return the split version
-            InternalNode temp = (InternalNode) node.split();
-            return temp;
-        } else {
-            return null;// if it doesn't split then shouldn't return anything new to add to the tree
-                        // recursively
+    private int upperBound(List<K> keys, K key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys.get(middle).compareTo(key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
         }
+        return low;
     }
 
+
     /**
-     * Decents which type node is and then calls the specific helper method
+     * Builds the tree bottom-up from an unordered batch of key-value pairs. The pairs are sorted
+     * once by key (stable, so duplicates keep their input order), packed into full leaf nodes
+     * and then each internal level is built from the level below it. This avoids the repeated
+     * splits that calling insert once per pair causes.
+     * 
+     * Note: the tree must be empty; use insert to add to a tree that already has data.
      * 
-     * @param node
-     * @param key
-     * @param value
-     * @return Recursive, will be the root node at the end
+     * @param keys keys to load
+     * @param values values to load, values.get(i) is paired with keys.get(i)
+     * @throws IllegalArgumentException if the lists are null or of different sizes
+     * @throws IllegalStateException if the tree is not empty
      */
-    @SuppressWarnings("unchecked")
-    private Node insertHelper(Node node, K key, V value) {
-        if (node.getClass().equals(LeafNode.class)) {
-            return insertHelper((LeafNode) node, key, value);
-        } else if (node.getClass().equals(InternalNode.class)) {
-            return insertHelper((InternalNode) node, key, value);
+    public void bulkLoad(List<K> keys, List<V> values) {
+        if (keys == null || values == null || keys.size() != values.size()) {
+            throw new IllegalArgumentException("keys and values must be the same size");
+        }
+        if (!root.keys.isEmpty()) {
+            throw new IllegalStateException("bulkLoad requires an empty tree");
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        // sort the positions of the pairs by key, Arrays.sort on objects is stable
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+
+        // pack the leaves, a node overflows at branchingFactor keys so each holds at most
+        // branchingFactor - 1 keys. The pairs are spread evenly so no leaf is left nearly empty
+        int leafCount = (order.length + branchingFactor - 2) / (branchingFactor - 1);
+        List<Node> level = new ArrayList<Node>(leafCount);
+        LeafNode previous = null;
+        int next = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int size = (order.length - next) / (leafCount - leaf);// even share of what's left
+            LeafNode current = new LeafNode();
+            for (int j = 0; j < size; j++, next++) {
+                current.keys.add(keys.get(order[next]));
+                current.values.add(values.get(order[next]));
+            }
+            current.previous = previous;// links the leaves together in order
+            if (previous != null) {
+                previous.next = current;
+            }
+            previous = current;
+            level.add(current);
         }
-        return null;
+
+        // build each internal level from the one below it until only the root is left
+        while (level.size() > 1) {
+            int parentCount = (level.size() + branchingFactor - 1) / branchingFactor;
+            List<Node> parents = new ArrayList<Node>(parentCount);
+            next = 0;
+            for (int parent = 0; parent < parentCount; parent++) {
+                int size = (level.size() - next) / (parentCount - parent);
+                InternalNode current = new InternalNode();
+                for (int j = 0; j < size; j++, next++) {
+                    Node child = level.get(next);
+                    if (j > 0) {// the separator is the first key found in the right child
+                        current.keys.add(child.getFirstLeafKey());
+                    }
+                    current.children.add(child);
+                }
+                parents.add(current);
+            }
+            level = parents;
+        }
+        root = level.get(0);
     }
 
 
@@ -150,6 +215,117 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
     }
 
 
+    /**
+     * Gets the values whose keys are between low and high in a single pass: the tree is
+     * descended once to low and then the leaf nodes are walked until a key passes high.
+     * 
+     * Example: rangeSearch(50.0, true, 200.0, false) returns the values with keys in [50, 200)
+     * 
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @return list of values in ascending key order; if nothing found, return empty list
+     */
+    public List<V> rangeSearch(K low, boolean lowInclusive, K high, boolean highInclusive) {
+        ArrayList<V> finalList = new ArrayList<V>();
+        if (low != null && high != null) {
+            int order = low.compareTo(high);
+            if (order > 0 || (order == 0 && !(lowInclusive && highInclusive))) {
+                return finalList;// the range is empty
+            }
+        }
+
+        LeafNode current = root.findLeaf(low);// descends once to the leaf that holds low
+        int i = startOf(current, low, lowInclusive);
+        while (current != null && i == current.keys.size()) {// low is past the end of the leaf
+            current = current.next;
+            i = startOf(current, low, lowInclusive);
+        }
+
+        while (current != null) {// walks the leaves until a key is past high
+            int end = current.keys.size();
+            if (high != null) {
+                end = highInclusive ? upperBound(current.keys, high)
+                    : lowerBound(current.keys, high);
+            }
+            finalList.addAll(current.values.subList(i, end));
+            if (end < current.keys.size()) {// the rest of the keys are past high
+                break;
+            }
+            current = current.next;
+            i = 0;
+        }
+        return finalList;
+    }
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high. Nothing is
+     * copied: the tree is descended once when the iterator is made and each call to next moves
+     * one entry along the leaf nodes, so reading the first few values of a huge range only costs
+     * as much as those few values.
+     * 
+     * Note: the tree must not be changed while the iterator is in use.
+     * 
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @return iterator over the values in ascending key order
+     */
+    public Iterator<V> rangeIterator(K low, boolean lowInclusive, K high, boolean highInclusive) {
+        return new RangeIterator(low, lowInclusive, high, highInclusive);
+    }
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high, from the largest
+     * key down to the smallest. The tree is descended once to high and then the previous links
+     * of the leaf nodes are followed, so reading the first k values costs about k steps.
+     * 
+     * Note: the tree must not be changed while the iterator is in use.
+     * 
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @return iterator over the values in descending key order
+     */
+    public Iterator<V> descendingIterator(K high, boolean highInclusive, K low,
+        boolean lowInclusive) {
+        return new DescendingIterator(high, highInclusive, low, lowInclusive);
+    }
+
+    /**
+     * Passes the values whose keys are between low and high to the visitor in ascending key
+     * order, without building a list
+     * 
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @param visitor receives each value
+     */
+    public void forEachInRange(K low, boolean lowInclusive, K high, boolean highInclusive,
+        Consumer<? super V> visitor) {
+        rangeIterator(low, lowInclusive, high, highInclusive).forEachRemaining(visitor);
+    }
+
+    /**
+     * Finds where the keys of a range start in a leaf node
+     * 
+     * @param leaf leaf node, may be null
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @return index of the first key in the range, 0 if the leaf is null
+     */
+    private int startOf(LeafNode leaf, K low, boolean lowInclusive) {
+        if (leaf == null || low == null) {
+            return 0;
+        }
+        return lowInclusive ? lowerBound(leaf.keys, low) : upperBound(leaf.keys, low);
+    }
+
+
 
     /*
      * (non-Javadoc)
@@ -188,6 +364,169 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
         return sb.toString();
     }
 
+    /**
+     * This class walks the leaf nodes lazily for rangeIterator
+     */
+    private class RangeIterator implements Iterator<V> {
+
+        // Leaf node holding the next value, null when there are no more values
+        private LeafNode current;
+
+        // Index of the next value in current
+        private int i;
+
+        // Upper bound of the keys, null for no upper bound
+        private final K high;
+
+        // If keys equal to high are included
+        private final boolean highInclusive;
+
+        /**
+         * Descends to the first value in the range
+         */
+        RangeIterator(K low, boolean lowInclusive, K high, boolean highInclusive) {
+            this.high = high;
+            this.highInclusive = highInclusive;
+            if (low != null && high != null) {
+                int order = low.compareTo(high);
+                if (order > 0 || (order == 0 && !(lowInclusive && highInclusive))) {
+                    return;// the range is empty
+                }
+            }
+            current = root.findLeaf(low);
+            i = startOf(current, low, lowInclusive);
+            while (current != null && i == current.keys.size()) {// low is past the end of the
+                                                                   // leaf
+                current = current.next;
+                i = startOf(current, low, lowInclusive);
+            }
+            skipToValue();
+        }
+
+        /**
+         * Moves past the end of full leaves and ends the walk once a key is past high
+         */
+        private void skipToValue() {
+            while (current != null && i == current.keys.size()) {
+                current = current.next;
+                i = 0;
+            }
+            if (current != null && high != null) {
+                int order = current.keys.get(i).compareTo(high);
+                if (order > 0 || (order == 0 && !highInclusive)) {
+                    current = null;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.Iterator#next()
+         */
+        @Override
+        public V next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            V value = current.values.get(i++);
+            skipToValue();
+            return value;
+        }
+
+    } // End of class RangeIterator
+
+    /**
+     * This class walks the leaf nodes backwards lazily for descendingIterator
+     */
+    private class DescendingIterator implements Iterator<V> {
+
+        // Leaf node holding the next value, null when there are no more values
+        private LeafNode current;
+
+        // Index of the next value in current
+        private int i;
+
+        // Lower bound of the keys, null for no lower bound
+        private final K low;
+
+        // If keys equal to low are included
+        private final boolean lowInclusive;
+
+        /**
+         * Descends to the last value in the range
+         */
+        DescendingIterator(K high, boolean highInclusive, K low, boolean lowInclusive) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            if (low != null && high != null) {
+                int order = low.compareTo(high);
+                if (order > 0 || (order == 0 && !(lowInclusive && highInclusive))) {
+                    return;// the range is empty
+                }
+            }
+            current = root.findLastLeaf(high, highInclusive);
+            i = current.keys.size();
+            if (high != null) {
+                i = highInclusive ? upperBound(current.keys, high) : lowerBound(current.keys, high);
+            }
+            i--;// the last key that is not past high
+            skipToValue();
+        }
+
+        /**
+         * Moves past the start of leaves and ends the walk once a key is past low
+         */
+        private void skipToValue() {
+            while (current != null && i < 0) {
+                current = current.previous;
+                i = current == null ? -1 : current.keys.size() - 1;
+            }
+            if (current != null && low != null) {
+                int order = current.keys.get(i).compareTo(low);
+                if (order < 0 || (order == 0 && !lowInclusive)) {
+                    current = null;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.Iterator#next()
+         */
+        @Override
+        public V next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            V value = current.values.get(i--);
+            skipToValue();
+            return value;
+        }
+
+    } // End of class DescendingIterator
+
     /**
      * This abstract class represents any type of node in the tree This class is a super class of
      * the LeafNode and InternalNode types.
@@ -212,8 +551,9 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          * 
          * @param key
          * @param value
+         * @return null, or the new parent holding both halves if this node split
          */
-        abstract void insert(K key, V value);
+        abstract Node insert(K key, V value);
 
         /**
          * Gets the first leaf key of the tree
@@ -236,12 +576,48 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          */
         abstract List<V> rangeSearch(K key, String comparator);
 
+        /**
+         * Finds the leftmost leaf node that could hold the key
+         * 
+         * @param key key to find, null for the first leaf of the tree
+         * @return the leaf node
+         */
+        abstract LeafNode findLeaf(K key);
+
+        /**
+         * Finds the rightmost leaf node that could hold a key below (or at) the given key
+         * 
+         * @param key key to find, null for the last leaf of the tree
+         * @param inclusive if keys equal to key are wanted
+         * @return the leaf node
+         */
+        abstract LeafNode findLastLeaf(K key, boolean inclusive);
+
         /**
          * 
          * @return boolean
          */
         abstract boolean isOverflow();
 
+        /**
+         * Deletes one pair with the key and value from the leaf nodes below this node
+         * 
+         * @param key
+         * @param value
+         * @return true if the pair was found. This node may be left with too few keys, its
+         *         parent rebalances it
+         */
+        abstract boolean delete(K key, V value);
+
+        /**
+         * Checks if the node has fewer keys than a node that is at least half full
+         * 
+         * @return true if the node needs a key from a sibling or to be merged with one
+         */
+        boolean isUnderflow() {
+            return keys.size() < (branchingFactor - 1) / 2;
+        }
+
         public String toString() {
             return keys.toString();
         }
@@ -273,15 +649,9 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          * 
          * @see BPTree.Node#getFirstLeafKey()
          */
-        @SuppressWarnings("unchecked")
         K getFirstLeafKey() {
-            InternalNode current = this;
-            while (current.children.get(0).getClass().equals(InternalNode.class)) {// iterates to a
-                                                                                   // leaf node
-                current = (InternalNode) current.children.get(0);
-            }
-
-            return current.getFirstLeafKey();// calls getFirstLeafKey on the leafNode
+            return children.get(0).getFirstLeafKey();// goes down the left most children until it
+                                                     // reaches the leafNode
         }
 
         /**
@@ -298,8 +668,24 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          * 
          * @see BPTree.Node#insert(java.lang.Comparable, java.lang.Object)
          */
-        void insert(K key, V value) {
-            this.keys.add(key);
+        @SuppressWarnings("unchecked")
+        Node insert(K key, V value) {
+            int i = lowerBound(keys, key);// finds the child we need to go to next
+            // calls insert on the child that is located at the location we found
+            InternalNode recur = (InternalNode) children.get(i).insert(key, value);
+
+            if (recur == null) {// if nothing was returned that means it didn't split so return null
+                return null;
+            }
+            keys.add(i, recur.keys.get(0));// add the key if it did split
+            children.set(i, recur.children.get(0));// replace the child that was split with its
+                                                   // two halves
+            children.add(i + 1, recur.children.get(1));
+            if (isOverflow()) {// if it's unbalanced now then return a split version of it
+                return split();
+            }
+
+            return null;
         }
 
         /**
@@ -309,19 +695,14 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          */
         Node split() {
             InternalNode leftSide = new InternalNode();
-            int i = 0;
-            while (i <= this.children.size() / 2) {// takes the first half of the children and adds
-                                                   // it to the leftSide
-                leftSide.children.add(this.children.get(0));
-                this.children.remove(0);// possible error with the loop
-                i++;
-            }
+            int middle = keys.size() / 2;// index of the key that moves up to the new parent
 
-            for (int j = 0; j < --i; j++) {// decrements i because the while added 1 at the end,
-                                           // loops through and sets the keys
-                leftSide.keys.add(this.keys.get(0));
-                this.keys.remove(0);
-            }
+            // moves the first half of the children and the keys between them to the leftSide,
+            // clearing the subList shifts the rest down once instead of once per element
+            leftSide.children.addAll(children.subList(0, middle + 1));
+            children.subList(0, middle + 1).clear();
+            leftSide.keys.addAll(keys.subList(0, middle));
+            keys.subList(0, middle).clear();
 
             InternalNode parent = new InternalNode();// creates the new parent
             parent.children.add(leftSide);
@@ -339,17 +720,146 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          * @see BPTree.Node#rangeSearch(java.lang.Comparable, java.lang.String)
          */
         List<V> rangeSearch(K key, String comparator) {
-            int i = 0;
-            for (i = 0; i < keys.size(); i++) {// finds the next child node to recursively go to
-                if (keys.get(i).compareTo(key) >= 0) {// when the keys value is greater than the key
-                    break;
-                }
-            }
+            int i = lowerBound(keys, key);// finds the next child node to recursively go to, the
+                                          // first one whose key is greater than or equal to key
 
             return children.get(i).rangeSearch(key, comparator);// recursively calls rangesearch on
                                                                 // the found child
         }
 
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#findLeaf(java.lang.Comparable)
+         */
+        LeafNode findLeaf(K key) {
+            int i = key == null ? 0 : lowerBound(keys, key);
+            return children.get(i).findLeaf(key);
+        }
+
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#findLastLeaf(java.lang.Comparable, boolean)
+         */
+        LeafNode findLastLeaf(K key, boolean inclusive) {
+            int i = keys.size();// the children to the right only hold keys past key
+            if (key != null) {
+                i = inclusive ? upperBound(keys, key) : lowerBound(keys, key);
+            }
+            return children.get(i).findLastLeaf(key, inclusive);
+        }
+
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#delete(java.lang.Comparable, java.lang.Object)
+         */
+        boolean delete(K key, V value) {
+            // duplicates of the key can be in any child from the first to the last that can
+            // hold the key
+            int last = upperBound(keys, key);
+            for (int i = lowerBound(keys, key); i <= last; i++) {
+                if (children.get(i).delete(key, value)) {
+                    if (children.get(i).isUnderflow()) {
+                        rebalance(i);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Fixes a child that has too few keys by moving a key from a sibling that can spare
+         * one, or else by merging it with a sibling
+         * 
+         * @param i index of the child
+         */
+        private void rebalance(int i) {
+            int minimum = (branchingFactor - 1) / 2;
+            if (i > 0 && children.get(i - 1).keys.size() > minimum) {
+                moveRight(i - 1);
+            } else if (i < keys.size() && children.get(i + 1).keys.size() > minimum) {
+                moveLeft(i);
+            } else if (i > 0) {
+                merge(i - 1);
+            } else {
+                merge(i);
+            }
+        }
+
+        /**
+         * Moves the last key of children[i] to the front of children[i + 1]. Leaves move a pair
+         * and take the new first key of the right leaf as their separator, internal nodes
+         * rotate the key through the separator.
+         * 
+         * @param i index of the separator between the two children
+         */
+        private void moveRight(int i) {
+            Node left = children.get(i);
+            Node right = children.get(i + 1);
+            K moved = left.keys.remove(left.keys.size() - 1);
+            if (left instanceof BPTree.LeafNode) {
+                right.keys.add(0, moved);
+                ((LeafNode) right).values.add(0,
+                    ((LeafNode) left).values.remove(left.keys.size()));
+                keys.set(i, moved);
+            } else {
+                List<Node> leftChildren = ((InternalNode) left).children;
+                right.keys.add(0, keys.get(i));
+                ((InternalNode) right).children.add(0,
+                    leftChildren.remove(leftChildren.size() - 1));
+                keys.set(i, moved);
+            }
+        }
+
+        /**
+         * Moves the first key of children[i + 1] to the end of children[i], the mirror of
+         * moveRight
+         * 
+         * @param i index of the separator between the two children
+         */
+        private void moveLeft(int i) {
+            Node left = children.get(i);
+            Node right = children.get(i + 1);
+            K moved = right.keys.remove(0);
+            if (left instanceof BPTree.LeafNode) {
+                left.keys.add(moved);
+                ((LeafNode) left).values.add(((LeafNode) right).values.remove(0));
+                keys.set(i, right.getFirstLeafKey());
+            } else {
+                left.keys.add(keys.get(i));
+                ((InternalNode) left).children.add(((InternalNode) right).children.remove(0));
+                keys.set(i, moved);
+            }
+        }
+
+        /**
+         * Merges children[i + 1] into children[i] and removes the separator between them
+         * 
+         * @param i index of the separator between the two children
+         */
+        private void merge(int i) {
+            Node left = children.get(i);
+            Node right = children.remove(i + 1);
+            K separator = keys.remove(i);
+            if (left instanceof BPTree.LeafNode) {
+                LeafNode leftLeaf = (LeafNode) left;
+                LeafNode rightLeaf = (LeafNode) right;
+                leftLeaf.keys.addAll(rightLeaf.keys);
+                leftLeaf.values.addAll(rightLeaf.values);
+                leftLeaf.next = rightLeaf.next;// unlink the right leaf
+                if (rightLeaf.next != null) {
+                    rightLeaf.next.previous = leftLeaf;
+                }
+            } else {// the separator comes down between the two halves
+                left.keys.add(separator);
+                left.keys.addAll(right.keys);
+                ((InternalNode) left).children.addAll(((InternalNode) right).children);
+            }
+        }
+
     } // End of class InternalNode
 
 
@@ -389,6 +899,24 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
             return keys.get(0);
         }
 
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#findLeaf(java.lang.Comparable)
+         */
+        LeafNode findLeaf(K key) {
+            return this;
+        }
+
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#findLastLeaf(java.lang.Comparable, boolean)
+         */
+        LeafNode findLastLeaf(K key, boolean inclusive) {
+            return this;
+        }
+
         /**
          * (non-Javadoc)
          * 
@@ -403,19 +931,34 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          * 
          * @see BPTree.Node#insert(Comparable, Object)
          */
-        void insert(K key, V value) {
-            int i = 0;
-            for (i = 0; i < keys.size(); i++) {// finds exactly where it should be inserted
-                if (keys.get(i).compareTo(key) >= 0) {// break when we have gotten to a point where
-                                                      // the already stored key is greater than or
-                                                      // equal to the
-                                                      // key
-                    break;
-                }
-            }
+        Node insert(K key, V value) {
+            int i = lowerBound(keys, key);// finds exactly where it should be inserted, in front of
+                                          // the first stored key greater than or equal to the key
             keys.add(i, key);
             values.add(i, value);
 
+            if (isOverflow()) {// split up and return the split version
+                return split();
+            }
+            return null;// if it doesn't split then shouldn't return anything new to add to the
+                        // tree recursively
+        }
+
+        /**
+         * (non-Javadoc)
+         * 
+         * @see BPTree.Node#delete(java.lang.Comparable, java.lang.Object)
+         */
+        boolean delete(K key, V value) {
+            for (int i = lowerBound(keys, key); i < keys.size()
+                && keys.get(i).compareTo(key) == 0; i++) {
+                if (value == null ? values.get(i) == null : value.equals(values.get(i))) {
+                    keys.remove(i);
+                    values.remove(i);
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
@@ -425,14 +968,13 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
          */
         Node split() {
             LeafNode leftSide = new LeafNode();// stores the left side of the new parent
-            int i = 0;
-            while (i < keys.size() / 2) {// add the first half of the values and keys
-                leftSide.values.add(values.get(0));
-                leftSide.keys.add(keys.get(0));
-                values.remove(0);
-                keys.remove(0);// removes values and keys from the current so they arnt duplicated
-                i++;
-            }
+            int half = keys.size() / 2;
+            // add the first half of the values and keys, then removes them from the current so
+            // they arnt duplicated
+            leftSide.values.addAll(values.subList(0, half));
+            leftSide.keys.addAll(keys.subList(0, half));
+            values.subList(0, half).clear();
+            keys.subList(0, half).clear();
             InternalNode parent = new InternalNode();
             parent.children.add(leftSide);
             parent.children.add(this);
@@ -458,12 +1000,7 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
             ArrayList<V> finalList = new ArrayList<V>();
             LeafNode current = this;
             if (comparator.equals(">=")) {
-                int i = 0;
-                for (i = 0; i < keys.size(); i++) {// finds the correct location
-                    if (keys.get(i).compareTo(key) >= 0) {
-                        break;
-                    }
-                }
+                int i = lowerBound(keys, key);// finds the correct location
                 finalList.addAll(current.values.subList(i, current.values.size()));// add a sublist
                                                                                    // from i to the
                                                                                    // end
@@ -476,44 +1013,38 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
             }
 
             else if (comparator.equals("<=")) {
+                LeafNode first = current;// finds the first leaf so all previous values can be
+                                         // added in order, instead of prepending each leaf
+                while (first.previous != null) {
+                    first = first.previous;
+                }
+                while (first != current) {// add all previous values
+                    finalList.addAll(first.values);
+                    first = first.next;
+                }
                 LeafNode current2 = current;// stores the found node to be used to go to the right
                 while (current2 != null) {// iterates to the end of the equal to values
-                    for (int k = 0; k < current2.keys.size(); k++) {
-                        if (current2.keys.get(k).compareTo(key) <= 0) {
-                            finalList.add(current2.values.get(k));// add all values that are the
-                                                                  // same
-                        } else {
-                            break;
-                        }
+                    int end = upperBound(current2.keys, key);
+                    finalList.addAll(current2.values.subList(0, end));// add all values that are the
+                                                                      // same
+                    if (end < current2.keys.size()) {// the rest of the keys are greater
+                        break;
                     }
                     current2 = current2.next;
                 }
-                current = current.previous;
-                while (current != null) {// add all previous values
-                    finalList.addAll(0, current.values);
-                    current = current.previous;
-                }
             }
 
             else {
-                int k = 0;
-                for (k = 0; k < current.keys.size(); k++) {// iterates through found node
-                    if (current.keys.get(k).compareTo(key) == 0) {
-                        finalList.add(current.values.get(k));// if keys match then add the value
-                    }
-                }
-                current = current.next;
-                boolean breakLoop = false;
-                while (current != null && !breakLoop) {// iterates to the right
-                    for (int j = 0; j < current.keys.size(); j++) {// iterates through the keys
-                        if (current.keys.get(j).compareTo(key) == 0) {// adds all matching keys
-                            finalList.add(current.values.get(j));
-                            continue;
-                        }
-                        breakLoop = true;
-                        break;// breaks both loops when it reaches a key that is not equal to 'key'
+                int start = lowerBound(current.keys, key);// the leftmost duplicate of key
+                while (current != null) {// iterates to the right through the matching keys
+                    int end = upperBound(current.keys, key);
+                    finalList.addAll(current.values.subList(start, end));// adds all matching keys
+                    if (end < current.keys.size()) {// breaks when it reaches a key that is not
+                                                    // equal to 'key'
+                        break;
                     }
                     current = current.next;
+                    start = 0;
                 }
 
             }
@@ -0,0 +1,242 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Filename: BPTreeBenchmark.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Timings are wall clock and only meant for comparing approaches on the
+ * same machine. Run with a large heap, e.g. java -Xmx4g application.BPTreeBenchmark 2000000
+ *
+ * This class contains micro benchmarks for building and searching the nutrient indexes
+ *
+ */
+public class BPTreeBenchmark {
+
+    // Number of times each measurement is repeated, the best run is reported
+    private static final int RUNS = 5;
+
+    /*
+     * Helper method to make a column of nutrient values shaped like the real data: whole numbers
+     * in a small range, so there are many duplicate keys
+     *
+     * @param rows number of values
+     * @param seed seed for the random generator
+     * @return list of values
+     */
+    static List<Double> nutrientColumn(int rows, long seed) {
+        Random rnd = new Random(seed);
+        List<Double> column = new ArrayList<Double>(rows);
+        for (int i = 0; i < rows; i++) {
+            column.add((double) rnd.nextInt(900)); // calories range from 0 to 900
+        }
+        return column;
+    } // End nutrientColumn()
+
+
+    /*
+     * Helper method to print the best time of a benchmark
+     *
+     * @param name name of the benchmark
+     * @param nanos best time in nanoseconds
+     */
+    static void report(String name, long nanos) {
+        System.out.printf("%-40s %10.2f ms%n", name, nanos / 1e6);
+    } // End report()
+
+
+    /*
+     * Compares building an index with one insert per row against bulkLoad
+     *
+     * @param rows number of rows in the index
+     * @param branchingFactor branching factor of the tree
+     */
+    static void insertVersusBulkLoad(int rows, int branchingFactor) {
+        List<Double> keys = nutrientColumn(rows, 42);
+        List<Integer> values = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(i);
+        }
+
+        long bestInsert = Long.MAX_VALUE;
+        long bestBulk = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            BPTree<Double, Integer> inserted = new BPTree<Double, Integer>(branchingFactor);
+            for (int i = 0; i < rows; i++) { // one insert per row like the old loader
+                inserted.insert(keys.get(i), values.get(i));
+            }
+            bestInsert = Math.min(bestInsert, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            BPTree<Double, Integer> loaded = new BPTree<Double, Integer>(branchingFactor);
+            loaded.bulkLoad(keys, values);
+            bestBulk = Math.min(bestBulk, System.nanoTime() - start);
+
+            // sanity check that both trees answer the same query
+            if (inserted.rangeSearch(450.0, ">=").size() != loaded.rangeSearch(450.0, ">=")
+                .size()) {
+                throw new IllegalStateException("insert and bulkLoad trees differ");
+            }
+        }
+        report("insert x" + rows + " (bf " + branchingFactor + ")", bestInsert);
+        report("bulkLoad x" + rows + " (bf " + branchingFactor + ")", bestBulk);
+    } // End insertVersusBulkLoad()
+
+
+    /*
+     * Helper method to get the heap in use after asking for a garbage collection
+     *
+     * @return bytes of heap in use
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    } // End usedHeap()
+
+
+    /*
+     * Sweeps the branching factor and measures building the tree with insert, answering a batch
+     * of range searches and the heap the tree takes up
+     *
+     * @param rows number of rows in the index
+     * @param branchingFactors the branching factors to measure
+     */
+    static void branchingFactorSweep(int rows, int... branchingFactors) {
+        List<Double> keys = nutrientColumn(rows, 42);
+        List<Integer> values = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(i);
+        }
+        List<Double> queries = nutrientColumn(1000, 7);
+
+        System.out.printf("%n%6s %14s %14s %14s %12s%n", "bf", "insert ms", "1000 == ms",
+            "10000 miss ms", "heap MB");
+        for (int branchingFactor : branchingFactors) {
+            long bestInsert = Long.MAX_VALUE;
+            long bestSearch = Long.MAX_VALUE;
+            long bestMiss = Long.MAX_VALUE;
+            long bytes = 0;
+            for (int run = 0; run < RUNS; run++) {
+                long before = usedHeap();
+                long start = System.nanoTime();
+                BPTree<Double, Integer> tree = new BPTree<Double, Integer>(branchingFactor);
+                for (int i = 0; i < rows; i++) {
+                    tree.insert(keys.get(i), values.get(i));
+                }
+                bestInsert = Math.min(bestInsert, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                long found = 0;
+                for (Double query : queries) { // narrow searches so the descent is measured
+                    found += tree.rangeSearch(query, "==").size();
+                }
+                bestSearch = Math.min(bestSearch, System.nanoTime() - start);
+                if (found == 0) {
+                    throw new IllegalStateException("no matches found");
+                }
+
+                start = System.nanoTime();
+                for (int i = 0; i < 10; i++) {
+                    for (Double query : queries) { // keys that are not in the tree, so only the
+                                                   // descent and the search in the leaf are timed
+                        found += tree.rangeSearch(query + 0.5, "==").size();
+                    }
+                }
+                bestMiss = Math.min(bestMiss, System.nanoTime() - start);
+                bytes = usedHeap() - before;
+                tree.insert(0.0, 0); // keeps the tree reachable until it has been measured
+            }
+            System.out.printf("%6d %14.2f %14.2f %14.2f %12.1f%n", branchingFactor,
+                bestInsert / 1e6, bestSearch / 1e6, bestMiss / 1e6, bytes / (1024.0 * 1024.0));
+        }
+    } // End branchingFactorSweep()
+
+
+    /*
+     * Compares the generic BPTree<Double, Integer> with the primitive DoubleBPTree: the heap each
+     * index takes up (boxed keys included) and the time to answer a batch of range searches
+     *
+     * @param rows number of rows in the index
+     * @param branchingFactor branching factor of both trees
+     */
+    static void genericVersusPrimitive(int rows, int branchingFactor) {
+        List<Double> column = nutrientColumn(rows, 42);
+        double[] primitiveKeys = new double[rows];
+        int[] ordinals = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            primitiveKeys[i] = column.get(i);
+            ordinals[i] = i;
+        }
+        column = null;
+        List<Double> queries = nutrientColumn(1000, 7);
+
+        long before = usedHeap();
+        BPTree<Double, Integer> generic = new BPTree<Double, Integer>(branchingFactor);
+        List<Double> keys = new ArrayList<Double>(rows);
+        List<Integer> values = new ArrayList<Integer>(rows);
+        for (int i = 0; i < rows; i++) { // boxed the same way the old loader did
+            keys.add(primitiveKeys[i]);
+            values.add(ordinals[i]);
+        }
+        generic.bulkLoad(keys, values);
+        keys = null;
+        values = null;
+        long genericBytes = usedHeap() - before;
+
+        before = usedHeap();
+        DoubleBPTree primitive = new DoubleBPTree(branchingFactor);
+        primitive.bulkLoad(primitiveKeys, ordinals);
+        long primitiveBytes = usedHeap() - before;
+
+        long bestGeneric = Long.MAX_VALUE;
+        long bestPrimitive = Long.MAX_VALUE;
+        long found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (Double query : queries) {
+                found += generic.rangeSearch(query, "==").size();
+            }
+            bestGeneric = Math.min(bestGeneric, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (Double query : queries) {
+                found -= primitive.rangeSearchValues(query, "==").length;
+            }
+            bestPrimitive = Math.min(bestPrimitive, System.nanoTime() - start);
+        }
+        if (found != 0) {
+            throw new IllegalStateException("BPTree and DoubleBPTree differ");
+        }
+        System.out.printf("%nBPTree<Double, Integer> heap %8.1f MB, DoubleBPTree heap %8.1f MB%n",
+            genericBytes / (1024.0 * 1024.0), primitiveBytes / (1024.0 * 1024.0));
+        report("BPTree 1000 == searches", bestGeneric);
+        report("DoubleBPTree 1000 == searches", bestPrimitive);
+    } // End genericVersusPrimitive()
+
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args optional number of rows, defaults to 1,000,000
+     */
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        insertVersusBulkLoad(rows, 3);
+        insertVersusBulkLoad(rows, FoodData.DEFAULT_BRANCHING_FACTOR);
+        branchingFactorSweep(rows, 3, 8, 16, 32, 64, 128, 256, 512);
+        genericVersusPrimitive(rows, FoodData.DEFAULT_BRANCHING_FACTOR);
+    }
+
+} // End BPTreeBenchmark class
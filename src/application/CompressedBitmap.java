@@ -0,0 +1,702 @@
+package application;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Filename: CompressedBitmap.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Only non-negative ints are stored, which is all food ordinals need
+ *
+ * This class represents a compressed set of ints, such as the ordinals of the food items
+ * matching one nutrient rule. It is split into chunks of 65536 values the same way roaring
+ * bitmaps are: a chunk with few values keeps them in a sorted char array and a dense chunk
+ * keeps one bit per value. Intersections, unions and differences work chunk by chunk, so
+ * combining the results of several rules never builds a hash set.
+ *
+ */
+public class CompressedBitmap {
+
+    // Chunks with more values than this are stored as bits, fewer are stored in an array
+    private static final int ARRAY_LIMIT = 4096;
+
+    // High 16 bits of the values in each chunk, in ascending order
+    private char[] keys;
+
+    // Chunks of values, containers[i] holds the low 16 bits of the values with high bits keys[i]
+    private Container[] containers;
+
+    // Number of chunks in use
+    private int size;
+
+    /**
+     * Public constructor for an empty bitmap
+     */
+    public CompressedBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+
+    /**
+     * Builds a bitmap from values in any order in time linear in their number
+     *
+     * @param values values to add, duplicates are ignored
+     * @return a bitmap holding the values
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public static CompressedBitmap of(int... values) {
+        // count the values in each chunk so each one can be built in the right form at once
+        int[] counts = new int[1];
+        for (int value : values) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative value: " + value);
+            }
+            int high = value >>> 16;
+            if (high >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(high + 1, counts.length * 2));
+            }
+            counts[high]++;
+        }
+        CompressedBitmap bitmap = new CompressedBitmap();
+        Container[] byHigh = new Container[counts.length];
+        for (int high = 0; high < counts.length; high++) {
+            if (counts[high] > 0) {
+                byHigh[high] = counts[high] > ARRAY_LIMIT ? new BitmapContainer()
+                    : new ArrayContainer(counts[high]);
+            }
+        }
+        for (int value : values) {
+            Container container = byHigh[value >>> 16];
+            if (container instanceof BitmapContainer) {
+                container.add((char) value);
+            } else {// filled unsorted here and sorted once below
+                ArrayContainer array = (ArrayContainer) container;
+                array.content[array.cardinality++] = (char) value;
+            }
+        }
+        for (int high = 0; high < byHigh.length; high++) {
+            Container container = byHigh[high];
+            if (container instanceof ArrayContainer) {
+                ((ArrayContainer) container).sortAndDeduplicate();
+            }
+            if (container != null) {
+                bitmap.append((char) high, container);
+            }
+        }
+        return bitmap;
+    }
+
+
+    /**
+     * Adds a value
+     *
+     * @param value non-negative value
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char high = (char) (value >>> 16);
+        int i = find(high);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            i = -i - 1;
+            insert(i, high, new ArrayContainer(4));
+            containers[i] = containers[i].add((char) value);
+        }
+    }
+
+
+    /**
+     * Removes a value if it is present
+     *
+     * @param value the value
+     */
+    public void remove(int value) {
+        if (value < 0) {
+            return;
+        }
+        int i = find((char) (value >>> 16));
+        if (i >= 0) {
+            containers[i] = containers[i].remove((char) value);
+            if (containers[i].cardinality() == 0) {// drops the empty chunk
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+                containers[--size] = null;
+            }
+        }
+    }
+
+
+    /**
+     * Checks if a value is present
+     *
+     * @param value the value
+     * @return true if the bitmap holds the value
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+
+    /**
+     * Gets the number of values in the bitmap
+     *
+     * @return number of values
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+
+    /**
+     * Checks if the bitmap holds no values
+     *
+     * @return true if it is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Gets the values in both this bitmap and the other one
+     *
+     * @param other the other bitmap
+     * @return a new bitmap with the intersection
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Gets the values in this bitmap, the other one or both
+     *
+     * @param other the other bitmap
+     * @return a new bitmap with the union
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Gets the values in this bitmap that are not in the other one
+     *
+     * @param other the other bitmap
+     * @return a new bitmap with the difference
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                ? containers[i].andNot(other.containers[j])
+                : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Passes every value to the consumer in ascending order
+     *
+     * @param consumer receives the values
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+
+    /**
+     * Gets every value in ascending order
+     *
+     * @return array of the values
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] count = new int[1];
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+
+    /*
+     * Helper method to binary search for the chunk with the given high bits
+     *
+     * @param high high 16 bits
+     * @return index of the chunk, or -(insertion point) - 1 if there is none
+     */
+    private int find(char high) {
+        int low = 0;
+        int end = size - 1;
+        while (low <= end) {
+            int middle = (low + end) >>> 1;
+            if (keys[middle] < high) {
+                low = middle + 1;
+            } else if (keys[middle] > high) {
+                end = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    /*
+     * Helper method to insert a chunk at an index
+     */
+    private void insert(int i, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+
+    /*
+     * Helper method to add a chunk after every other chunk
+     */
+    private void append(char high, Container container) {
+        insert(size, high, container);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "CompressedBitmap of " + cardinality() + " values in " + size + " chunks";
+    }
+
+    /**
+     * This abstract class represents the low 16 bits of the values in one chunk
+     */
+    private abstract static class Container {
+
+        /**
+         * Gets the number of values in the chunk
+         *
+         * @return number of values
+         */
+        abstract int cardinality();
+
+        /**
+         * Checks if a value is present
+         *
+         * @param value low 16 bits of the value
+         * @return true if it is present
+         */
+        abstract boolean contains(char value);
+
+        /**
+         * Adds a value
+         *
+         * @param value low 16 bits of the value
+         * @return the container holding the result, which may be a new form of container
+         */
+        abstract Container add(char value);
+
+        /**
+         * Removes a value
+         *
+         * @param value low 16 bits of the value
+         * @return the container holding the result, which may be a new form of container
+         */
+        abstract Container remove(char value);
+
+        /**
+         * Gets the values in both containers
+         *
+         * @param other the other container
+         * @return a new container
+         */
+        abstract Container and(Container other);
+
+        /**
+         * Gets the values in either container
+         *
+         * @param other the other container
+         * @return a new container
+         */
+        abstract Container or(Container other);
+
+        /**
+         * Gets the values in this container and not the other
+         *
+         * @param other the other container
+         * @return a new container
+         */
+        abstract Container andNot(Container other);
+
+        /**
+         * Gets a copy of the container
+         *
+         * @return a new container
+         */
+        abstract Container copy();
+
+        /**
+         * Passes every value to the consumer in ascending order
+         *
+         * @param base high bits of the chunk, already shifted
+         * @param consumer receives the values
+         */
+        abstract void forEach(int base, IntConsumer consumer);
+
+    } // End of abstract class Container
+
+    /**
+     * This class represents a sparse chunk as a sorted array of its values
+     */
+    private static class ArrayContainer extends Container {
+
+        // Sorted values, the first cardinality are in use
+        char[] content;
+
+        // Number of values
+        int cardinality;
+
+        /**
+         * Package constructor
+         *
+         * @param capacity initial capacity
+         */
+        ArrayContainer(int capacity) {
+            content = new char[capacity];
+        }
+
+        /**
+         * Sorts the content and removes duplicates, used after filling the content unsorted
+         */
+        void sortAndDeduplicate() {
+            Arrays.sort(content, 0, cardinality);
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (count == 0 || content[count - 1] != content[i]) {
+                    content[count++] = content[i];
+                }
+            }
+            cardinality = count;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(char value) {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        Container add(char value) {
+            int i = Arrays.binarySearch(content, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {// too dense, switch to bits
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(content, i, content, i + 1, cardinality - i);
+            content[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        Container remove(char value) {
+            int i = Arrays.binarySearch(content, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+            if (other instanceof ArrayContainer) {// merges two sorted arrays
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (content[i] < array.content[j]) {
+                        i++;
+                    } else if (content[i] > array.content[j]) {
+                        j++;
+                    } else {
+                        result.content[result.cardinality++] = content[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(content[i])) {
+                        result.content[result.cardinality++] = content[i];
+                    }
+                }
+            }
+            return result;
+        }
+
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > ARRAY_LIMIT) {
+                BitmapContainer result = toBitmap();
+                for (int j = 0; j < array.cardinality; j++) {
+                    result.add(array.content[j]);
+                }
+                return result.cardinality > ARRAY_LIMIT ? result : result.toArray();
+            }
+            ArrayContainer result = new ArrayContainer(Math.max(1, cardinality + array.cardinality));
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                char next;
+                if (j == array.cardinality || (i < cardinality && content[i] < array.content[j])) {
+                    next = content[i++];
+                } else if (i == cardinality || content[i] > array.content[j]) {
+                    next = array.content[j++];
+                } else {
+                    next = content[i++];
+                    j++;
+                }
+                result.content[result.cardinality++] = next;
+            }
+            return result;
+        }
+
+        Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(content[i])) {
+                    result.content[result.cardinality++] = content[i];
+                }
+            }
+            return result;
+        }
+
+        Container copy() {
+            ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+            System.arraycopy(content, 0, result.content, 0, cardinality);
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(base | content[i]);
+            }
+        }
+
+        /**
+         * Converts to a bitmap container
+         *
+         * @return a new bitmap container with the same values
+         */
+        BitmapContainer toBitmap() {
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                result.words[content[i] >>> 6] |= 1L << content[i];
+            }
+            result.cardinality = cardinality;
+            return result;
+        }
+
+    } // End of class ArrayContainer
+
+    /**
+     * This class represents a dense chunk as one bit per possible value
+     */
+    private static class BitmapContainer extends Container {
+
+        // 65536 bits, bit v is set if v is present
+        long[] words = new long[1024];
+
+        // Number of values
+        int cardinality;
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        Container add(char value) {
+            long word = words[value >>> 6];
+            long updated = word | (1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(char value) {
+            long word = words[value >>> 6];
+            long updated = word & ~(1L << value);
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality--;
+            }
+            return cardinality > ARRAY_LIMIT ? this : toArray();
+        }
+
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer result = new BitmapContainer();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int k = 0; k < words.length; k++) {
+                result.words[k] = words[k] & otherWords[k];
+                result.cardinality += Long.bitCount(result.words[k]);
+            }
+            return result.cardinality > ARRAY_LIMIT ? result : result.toArray();
+        }
+
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.add(array.content[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            result.cardinality = 0;
+            for (int k = 0; k < words.length; k++) {
+                result.words[k] |= otherWords[k];
+                result.cardinality += Long.bitCount(result.words[k]);
+            }
+            return result;
+        }
+
+        Container andNot(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.words[array.content[i] >>> 6] &= ~(1L << array.content[i]);
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int k = 0; k < words.length; k++) {
+                    result.words[k] &= ~otherWords[k];
+                }
+            }
+            result.cardinality = 0;
+            for (long word : result.words) {
+                result.cardinality += Long.bitCount(word);
+            }
+            return result.cardinality > ARRAY_LIMIT ? result : result.toArray();
+        }
+
+        Container copy() {
+            BitmapContainer result = new BitmapContainer();
+            System.arraycopy(words, 0, result.words, 0, words.length);
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        void forEach(int base, IntConsumer consumer) {
+            for (int k = 0; k < words.length; k++) {
+                long word = words[k];
+                while (word != 0) {// visits each set bit from the lowest
+                    consumer.accept(base | (k << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Converts to an array container
+         *
+         * @return a new array container with the same values
+         */
+        ArrayContainer toArray() {
+            ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+            forEach(0, value -> result.content[result.cardinality++] = (char) value);
+            return result;
+        }
+
+    } // End of class BitmapContainer
+
+} // End CompressedBitmap class
@@ -0,0 +1,604 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A B+ tree that many threads can insert into and search at the same time. It is a B-link tree
+ * (Lehman and Yao): every node keeps a high key, the largest key it may hold, and a link to its
+ * right sibling, on internal levels as well as on the leaves. A thread only latches the node it
+ * is reading, one at a time, so searches and inserts in different parts of the tree never wait
+ * for each other. If a node splits after a thread read its parent but before it reached the
+ * node, the key it wants is now past the node's high key, and the thread follows the right link
+ * instead of starting over.
+ *
+ * A split latches the parent before it releases the node that split, and latches are only
+ * taken upwards or to the right while another is held, so threads can not deadlock. Keys equal
+ * to a high key can be on either side of it: a node's keys are all <= its high key and its right
+ * sibling's keys are all >= it.
+ *
+ * Note: there is no delete, nodes are never removed, so a link read under a latch stays valid
+ * after the latch is released.
+ *
+ * @author Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * @param <K> key of the pairs
+ * @param <V> value of the pairs
+ */
+public class ConcurrentBPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
+
+    // Root of the tree, replaced only when the root splits
+    private volatile Node root;
+
+    // Taken to replace the root
+    private final Object rootLatch = new Object();
+
+    // Most children of an internal node, a node holds at most branchingFactor - 1 keys
+    private final int branchingFactor;
+
+    // Number of pairs in the tree
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Public constructor
+     *
+     * @param branchingFactor most children of an internal node, must be greater than 2
+     */
+    public ConcurrentBPTree(int branchingFactor) {
+        if (branchingFactor <= 2) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        this.branchingFactor = branchingFactor;
+        root = new LeafNode();
+    }
+
+
+    /**
+     * Gets the number of pairs in the tree. While other threads insert it is only an estimate.
+     *
+     * @return number of pairs
+     */
+    public int size() {
+        return size.intValue();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#insert(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void insert(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null key");
+        }
+        Node node = root;
+        while (node instanceof ConcurrentBPTree.InternalNode) {// one latch at a time
+            node = child(node, key);
+        }
+        node.latch.lock();
+        node = moveRight(node, key);
+        ((LeafNode) node).insert(key, value);
+        size.increment();
+
+        // split upwards until a node has room, each parent is latched before its child is
+        // released so a thread splitting the new sibling finds it in the parent
+        while (node.count >= branchingFactor) {
+            Node right = node.split();
+            Node parent = findParent(node, right);
+            node.latch.unlock();
+            if (parent == null) {// node was the root, a new root holds both halves
+                return;
+            }
+            node = parent;
+        }
+        node.latch.unlock();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#rangeSearch(java.lang.Object, java.lang.String)
+     */
+    @Override
+    public List<V> rangeSearch(K key, String comparator) {
+        if (comparator.contentEquals(">=")) {
+            return rangeSearch(key, true, null, false);
+        } else if (comparator.contentEquals("<=")) {
+            return rangeSearch(null, false, key, true);
+        } else if (comparator.contentEquals("==")) {
+            return rangeSearch(key, true, key, true);
+        }
+        return new ArrayList<V>();
+    }
+
+
+    /**
+     * Gets the values whose keys are between low and high. Each leaf is read under its latch,
+     * so a pair is seen at most once and every pair inserted before the search started is seen;
+     * pairs inserted while it runs may or may not be.
+     *
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @return list of values in ascending key order; if nothing found, return empty list
+     */
+    public List<V> rangeSearch(K low, boolean lowInclusive, K high, boolean highInclusive) {
+        ArrayList<V> finalList = new ArrayList<V>();
+        if (low != null && high != null) {
+            int order = low.compareTo(high);
+            if (order > 0 || (order == 0 && !(lowInclusive && highInclusive))) {
+                return finalList;// the range is empty
+            }
+        }
+        Node node = root;
+        while (node instanceof ConcurrentBPTree.InternalNode) {
+            node = child(node, low);
+        }
+        node.latch.lock();
+        node = moveRight(node, low);
+        while (true) {// walks the leaves until a key is past high
+            LeafNode leaf = (LeafNode) node;
+            int start = low == null ? 0
+                : lowInclusive ? leaf.lowerBound(low) : leaf.upperBound(low);
+            int end = leaf.count;
+            if (high != null) {
+                end = highInclusive ? leaf.upperBound(high) : leaf.lowerBound(high);
+            }
+            for (int i = start; i < end; i++) {
+                finalList.add(leaf.value(i));
+            }
+            Node next = leaf.right;
+            boolean done = end < leaf.count || next == null;
+            leaf.latch.unlock();
+            if (done) {
+                return finalList;
+            }
+            node = next;
+            node.latch.lock();
+        }
+    }
+
+
+    /*
+     * Helper method to go down one level from an internal node towards a key. The node is
+     * latched only while it is read.
+     *
+     * @param node internal node, not latched
+     * @param key key to find, null for the smallest keys
+     * @return child of node, or of a right sibling of node, that may hold the key
+     */
+    private Node child(Node node, K key) {
+        node.latch.lock();
+        node = moveRight(node, key);
+        InternalNode internal = (InternalNode) node;
+        Node child = internal.children[key == null ? 0 : internal.lowerBound(key)];
+        node.latch.unlock();
+        return child;
+    }
+
+
+    /*
+     * Helper method to follow right links while a key is past a node's high key, because the
+     * node split after its parent was read
+     *
+     * @param node latched node
+     * @param key key to find, null for the smallest keys
+     * @return the latched node that may hold the key, every other node is released
+     */
+    private Node moveRight(Node node, K key) {
+        while (key != null && node.highKey != null && key.compareTo(node.highKey) > 0) {
+            Node right = node.right;
+            node.latch.unlock();
+            right.latch.lock();
+            node = right;
+        }
+        return node;
+    }
+
+
+    /*
+     * Helper method to add the right half of a split node to the level above, with the node
+     * still latched. If the node is the root a new root is made for both halves.
+     *
+     * @param left latched node that split
+     * @param right its new right sibling
+     * @return the latched node the right half was added to, null if a new root was made
+     */
+    private Node findParent(Node left, Node right) {
+        K separator = left.highKey;
+        synchronized (rootLatch) {
+            if (root == left) {
+                root = new InternalNode(left, separator, right);
+                return null;
+            }
+        }
+        // descend to the level above the node, to a node at or before the one pointing to it.
+        // That node is at or past the root's level since the root was made before the node was
+        // released for the last time
+        Node node = root;
+        while (node.level > left.level + 1) {
+            node = child(node, separator);
+        }
+        node.latch.lock();
+        while (true) {
+            InternalNode parent = (InternalNode) node;
+            int i = parent.indexOf(left);
+            if (i >= 0) {
+                parent.insertChild(i, separator, right);
+                return parent;
+            }
+            Node next = node.right;// the node is further right, its parent may have split
+            node.latch.unlock();
+            next.latch.lock();
+            node = next;
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        Node first = root;
+        while (first != null) {// each level from its leftmost node along the right links
+            for (Node node = first; node != null;) {
+                node.latch.lock();
+                sb.append(Arrays.asList(Arrays.copyOf(node.keys, node.count))).append(' ');
+                Node next = node.right;
+                node.latch.unlock();
+                node = next;
+            }
+            sb.append('\n');
+            first = first instanceof ConcurrentBPTree.InternalNode
+                ? ((InternalNode) first).children[0] : null;
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * This abstract class represents any type of node in the tree. Every field is read and
+     * written with the node's latch held.
+     */
+    private abstract class Node {
+
+        // Held while the node is read or changed
+        final ReentrantLock latch = new ReentrantLock();
+
+        // Level of the node, 0 for a leaf
+        final int level;
+
+        // Keys of the node in ascending order, with room for one more than the node holds
+        final Object[] keys;
+
+        // Number of keys in use
+        int count;
+
+        // Largest key the node may hold, null if there is no limit
+        K highKey;
+
+        // Next node on the same level, null for the last one
+        Node right;
+
+        Node(int level) {
+            this.level = level;
+            keys = new Object[branchingFactor];
+        }
+
+        @SuppressWarnings("unchecked")
+        K key(int i) {
+            return (K) keys[i];
+        }
+
+        /*
+         * Gets the index of the first key >= key
+         */
+        int lowerBound(K key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (key(middle).compareTo(key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /*
+         * Gets the index of the first key > key
+         */
+        int upperBound(K key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (key(middle).compareTo(key) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /*
+         * Moves the upper half of the node into a new right sibling and links it in. The
+         * node's new high key is the separator to add to the parent.
+         *
+         * @return the new right sibling
+         */
+        abstract Node split();
+    } // End of abstract class Node
+
+
+    /**
+     * This class represents an internal node: keys[i] is the high key of children[i], and
+     * children[count] holds the keys up to the node's own high key
+     */
+    private class InternalNode extends Node {
+
+        // Children of the node, with room for one more than the node holds
+        final Node[] children;
+
+        @SuppressWarnings("unchecked")
+        InternalNode(int level) {
+            super(level);
+            children = (Node[]) new ConcurrentBPTree<?, ?>.Node[branchingFactor + 1];
+        }
+
+        /*
+         * Makes a new root above two halves of the old root
+         */
+        InternalNode(Node left, K separator, Node right) {
+            this(left.level + 1);
+            keys[0] = separator;
+            children[0] = left;
+            children[1] = right;
+            count = 1;
+        }
+
+        /*
+         * Gets the index of a child, -1 if it is not a child of this node
+         */
+        int indexOf(Node child) {
+            for (int i = 0; i <= count; i++) {
+                if (children[i] == child) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /*
+         * Adds the right half of the split child at index i
+         */
+        void insertChild(int i, K separator, Node child) {
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(children, i + 1, children, i + 2, count - i);
+            keys[i] = separator;
+            children[i + 1] = child;
+            count++;
+        }
+
+        @Override
+        Node split() {
+            int middle = count / 2;// keys[middle] moves up as the separator
+            InternalNode sibling = new InternalNode(level);
+            sibling.count = count - middle - 1;
+            System.arraycopy(keys, middle + 1, sibling.keys, 0, sibling.count);
+            System.arraycopy(children, middle + 1, sibling.children, 0, sibling.count + 1);
+            sibling.highKey = highKey;
+            sibling.right = right;
+            highKey = key(middle);
+            Arrays.fill(keys, middle, count, null);
+            Arrays.fill(children, middle + 1, count + 1, null);
+            count = middle;
+            right = sibling;// published last, once the sibling is complete
+            return sibling;
+        }
+    } // End of class InternalNode
+
+
+    /**
+     * This class represents a leaf node, its values are parallel to its keys
+     */
+    private class LeafNode extends Node {
+
+        // Values of the pairs, values[i] goes with keys[i]
+        final Object[] values;
+
+        LeafNode() {
+            super(0);
+            values = new Object[branchingFactor];
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(int i) {
+            return (V) values[i];
+        }
+
+        /*
+         * Adds a pair after any pairs with an equal key
+         */
+        void insert(K key, V value) {
+            int i = upperBound(key);
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            keys[i] = key;
+            values[i] = value;
+            count++;
+        }
+
+        @Override
+        Node split() {
+            int middle = count / 2;
+            LeafNode sibling = new LeafNode();
+            sibling.count = count - middle;
+            System.arraycopy(keys, middle, sibling.keys, 0, sibling.count);
+            System.arraycopy(values, middle, sibling.values, 0, sibling.count);
+            sibling.highKey = highKey;
+            sibling.right = right;
+            highKey = key(middle);// the first key of the sibling
+            Arrays.fill(keys, middle, count, null);
+            Arrays.fill(values, middle, count, null);
+            count = middle;
+            right = sibling;
+            return sibling;
+        }
+    } // End of class LeafNode
+
+
+    /**
+     * Stress test of the tree. Writer threads insert random keys, with many duplicates, while
+     * reader threads search random ranges. Every search must be sorted, must not see a pair
+     * twice, and must see every pair whose insert finished before the search started; at the end
+     * the tree must hold exactly the pairs inserted. Then the insert throughput is measured with
+     * 1, 2, 4, ... threads and compared with a BPTree behind one lock.
+     *
+     * @param args optional number of threads, the number of cores by default
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+            : Runtime.getRuntime().availableProcessors();
+        int perThread = 100000;
+        int readers = Math.max(2, threads / 2);
+        ConcurrentBPTree<Integer, Integer> tree = new ConcurrentBPTree<Integer, Integer>(4);
+
+        // keys[v] is the key of value v, value v = writer * perThread + i is its i-th insert
+        int[] keys = new int[threads * perThread];
+        Random random = new Random(1);
+        for (int v = 0; v < keys.length; v++) {
+            keys[v] = random.nextInt(keys.length / 4);
+        }
+        AtomicIntegerArray done = new AtomicIntegerArray(threads);// inserts finished per writer
+        AtomicInteger running = new AtomicInteger(threads);
+        AtomicReference<String> failure = new AtomicReference<String>();
+
+        List<Thread> all = new ArrayList<Thread>();
+        for (int w = 0; w < threads; w++) {
+            int writer = w;
+            all.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    int value = writer * perThread + i;
+                    tree.insert(keys[value], value);
+                    done.set(writer, i + 1);
+                }
+                running.decrementAndGet();
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            Random seed = new Random(r);
+            all.add(new Thread(() -> {
+                while (running.get() > 0 && failure.get() == null) {
+                    int low = seed.nextInt(keys.length / 4);
+                    int high = low + seed.nextInt(200);
+                    int[] before = new int[threads];
+                    for (int w = 0; w < threads; w++) {
+                        before[w] = done.get(w);
+                    }
+                    List<Integer> found = tree.rangeSearch(low, true, high, false);
+                    HashSet<Integer> seen = new HashSet<Integer>();
+                    int last = Integer.MIN_VALUE;
+                    for (int value : found) {
+                        if (keys[value] < low || keys[value] >= high || keys[value] < last
+                            || !seen.add(value)) {
+                            failure.compareAndSet(null, "bad search result " + value);
+                        }
+                        last = keys[value];
+                    }
+                    for (int w = 0; w < threads; w++) {
+                        for (int i = 0; i < before[w]; i++) {
+                            int value = w * perThread + i;
+                            if (keys[value] >= low && keys[value] < high
+                                && !seen.contains(value)) {
+                                failure.compareAndSet(null, "missed finished insert " + value);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : all) {
+            thread.start();
+        }
+        for (Thread thread : all) {
+            thread.join();
+        }
+        List<Integer> everything = tree.rangeSearch(null, false, null, false);
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        if (failure.get() == null && everything.size() != keys.length) {
+            failure.set("size " + everything.size() + " != " + keys.length);
+        }
+        for (int i = 0; failure.get() == null && i < sorted.length; i++) {
+            if (keys[everything.get(i)] != sorted[i]) {
+                failure.set("out of order at " + i);
+            }
+        }
+        System.out.println(failure.get() == null ? "Stress test passed: " + threads + " writers, "
+            + readers + " readers" : "Stress test FAILED: " + failure.get());
+
+        // insert throughput, a BPTree behind one lock against the B-link tree
+        System.out.println("threads  locked BPTree  ConcurrentBPTree  (inserts per second)");
+        for (int t = 1; t <= threads; t *= 2) {
+            BPTree<Integer, Integer> locked = new BPTree<Integer, Integer>(64);
+            double lockedRate = insertRate(t, keys, (key, value) -> {
+                synchronized (locked) {
+                    locked.insert(key, value);
+                }
+            });
+            ConcurrentBPTree<Integer, Integer> concurrent =
+                new ConcurrentBPTree<Integer, Integer>(64);
+            double concurrentRate = insertRate(t, keys, concurrent::insert);
+            System.out.printf("%7d  %13.0f  %16.0f%n", t, lockedRate, concurrentRate);
+        }
+    }
+
+
+    /*
+     * Helper method to insert every key with t threads, each inserting its share
+     *
+     * @return inserts per second
+     */
+    private static double insertRate(int t, int[] keys,
+        BiConsumer<Integer, Integer> insert) throws InterruptedException {
+        Thread[] workers = new Thread[t];
+        int share = keys.length / t;
+        long start = System.nanoTime();
+        for (int w = 0; w < t; w++) {
+            int from = w * share;
+            workers[w] = new Thread(() -> {
+                for (int v = from; v < from + share; v++) {
+                    insert.accept(keys[v], v);
+                }
+            });
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return share * (double) t / ((System.nanoTime() - start) / 1e9);
+    }
+
+} // End of class ConcurrentBPTree
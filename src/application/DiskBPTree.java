@@ -0,0 +1,1357 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A B+ tree of double keys and int values whose nodes are fixed-size pages of a file. Only the
+ * pages in a bounded LRU cache are on the heap, so an index can be much larger than the memory
+ * available, and the file can be opened again later without rebuilding the tree.
+ *
+ * Page 0 holds the header. Every other page is one node: a leaf holds keys, values and the
+ * numbers of its neighbour leaves, an internal node holds keys and the numbers of its children.
+ * Pages freed when deletes merge two nodes are chained into a free list and used again before
+ * the file grows. Keys are searched directly in the page bytes. Changed pages are written back
+ * when they are evicted from the cache or when the tree is flushed or closed.
+ *
+ * The same order as DoubleBPTree is used: pairs are ordered by key and then by value, and each
+ * separator is the first pair of its right subtree, so inserts and deletes follow one path.
+ * Searches by key descend to the first separator >= the key.
+ *
+ * Note: searches can run on many threads at once, the page cache is synchronized, but an
+ * insert, delete or bulk load must not run at the same time as anything else.
+ *
+ * @author Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ */
+public class DiskBPTree implements DoubleIndex, Closeable {
+
+    // Page size used when none is given, the usual size of a file system block
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    // Fewest pages the cache holds, whatever the byte budget: one insert can pin a leaf, its new
+    // sibling, the next leaf and a parent at the same time, and a delete a parent, a node, both
+    // its siblings and the next leaf
+    private static final int MIN_CACHED_PAGES = 8;
+
+    // First four bytes of the file, "FQBT"
+    private static final int MAGIC = 0x54425146;
+
+    // Version of the page layout
+    private static final int VERSION = 2;
+
+    // Page number that means no page, page 0 is the header so it is never a node
+    private static final int NONE = 0;
+
+    // Bytes of the header in use: magic, version, page size, root, height, page count, size and
+    // the first free page
+    private static final int HEADER = 32;
+
+    // Page layout: type byte at 0, key count at 4, then for a leaf the next and previous leaf
+    // at 8 and 12 and the keys at 16, for an internal node the keys at 8. The values of the
+    // pairs, or of the separators, and the children follow the keys. A free page keeps the next
+    // free page at 8
+    private static final byte LEAF = 0;
+    private static final byte INTERNAL = 1;
+    private static final byte FREE = 2;
+    private static final int COUNT = 4;
+    private static final int NEXT = 8;
+    private static final int PREVIOUS = 12;
+    private static final int LEAF_KEYS = 16;
+    private static final int INTERNAL_KEYS = 8;
+
+    // Open file of the tree
+    private final FileChannel channel;
+
+    // Size of every page in bytes
+    private final int pageSize;
+
+    // Most keys a leaf or an internal node can hold
+    private final int leafCapacity;
+    private final int internalCapacity;
+
+    // Where the values of a leaf, and the separator values and children of an internal node,
+    // start in a page
+    private final int leafValues;
+    private final int internalValues;
+    private final int internalChildren;
+
+    // Fewest keys a leaf or an internal node other than the root keeps after a delete
+    private final int leafMinimum;
+    private final int internalMinimum;
+
+    // Most pages kept in the cache while none are pinned
+    private final int cachedPages;
+
+    // Cached pages by page number, in least recently used order
+    private final LinkedHashMap<Integer, Page> cache;
+
+    // Header fields, written to page 0 by flush
+    private int root;
+    private int height;// number of levels, 1 when the root is a leaf
+    private int pageCount;
+    private int size;
+    private int freeList;// first free page, NONE if there is none
+
+    // Cache counters
+    private long hits;
+    private long misses;
+
+    /**
+     * Opens the tree stored in a file, or creates an empty tree if the file is empty or does not
+     * exist
+     *
+     * @param filePath path of the file
+     * @param pageSize size of each page in bytes for a new tree, an existing tree keeps the page
+     *        size it was created with
+     * @param cacheBytes most bytes of pages to keep on the heap
+     * @throws IOException if the file can not be opened or is not a tree
+     * @throws IllegalArgumentException if the page size is too small for three keys per node
+     */
+    public DiskBPTree(String filePath, int pageSize, long cacheBytes) throws IOException {
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            if (channel.size() > 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Not a DiskBPTree file: " + filePath);
+                }
+                pageSize = header.getInt(8);
+                root = header.getInt(12);
+                height = header.getInt(16);
+                pageCount = header.getInt(20);
+                size = header.getInt(24);
+                freeList = header.getInt(28);
+            }
+            if (pageSize < 64) {
+                throw new IllegalArgumentException("Illegal page size: " + pageSize);
+            }
+            this.pageSize = pageSize;
+            leafCapacity = (pageSize - LEAF_KEYS) / 12;
+            internalCapacity = (pageSize - INTERNAL_KEYS - 4) / 16;
+            leafValues = LEAF_KEYS + 8 * leafCapacity;
+            internalValues = INTERNAL_KEYS + 8 * internalCapacity;
+            internalChildren = internalValues + 4 * internalCapacity;
+            leafMinimum = leafCapacity / 2;// a full node split in two keeps at least this many
+            internalMinimum = internalCapacity / 2;
+            cachedPages = (int) Math.max(MIN_CACHED_PAGES,
+                Math.min(Integer.MAX_VALUE, cacheBytes / pageSize));
+            cache = new LinkedHashMap<Integer, Page>(16, 0.75f, true);
+            if (channel.size() == 0) {
+                pageCount = 1;// the header
+                newRoot();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Gets the number of key-value pairs in the tree
+     *
+     * @return size of the tree
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Gets the size of each page
+     *
+     * @return page size in bytes
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+
+    /**
+     * Gets how many page reads were served from the cache
+     *
+     * @return number of cache hits
+     */
+    public synchronized long getCacheHits() {
+        return hits;
+    }
+
+
+    /**
+     * Gets how many page reads had to go to the file
+     *
+     * @return number of cache misses
+     */
+    public synchronized long getCacheMisses() {
+        return misses;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#insert(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void insert(Double key, Integer value) {
+        insert(key.doubleValue(), value.intValue());
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see DoubleIndex#insert(double, int)
+     */
+    @Override
+    public void insert(double key, int value) {
+        if (Double.isNaN(key)) {
+            throw new IllegalArgumentException("NaN can not be used as a key");
+        }
+        // descend to the leaf, remembering the path so splits can move up it
+        int[] path = new int[height];
+        int[] slots = new int[height];
+        int id = root;
+        for (int level = 0; level < height - 1; level++) {
+            Page page = fetch(id);
+            path[level] = id;
+            slots[level] = upperBound(page, INTERNAL_KEYS, internalValues, key, value);
+            id = child(page, slots[level]);
+            release(page);
+        }
+
+        Page leaf = fetch(id);
+        int count = count(leaf);
+        int position = upperBound(leaf, LEAF_KEYS, leafValues, key, value);
+        if (count < leafCapacity) {
+            shift(leaf, LEAF_KEYS, 8, position, count);
+            shift(leaf, leafValues, 4, position, count);
+            leaf.data.putDouble(LEAF_KEYS + 8 * position, key);
+            leaf.data.putInt(leafValues + 4 * position, value);
+            setCount(leaf, count + 1);
+            release(leaf);
+            size++;
+            return;
+        }
+
+        // the leaf is full: split it, then insert the separator into each parent that is
+        // split in turn
+        double[] keys = new double[count + 1];
+        int[] values = new int[count + 1];
+        for (int i = 0, j = 0; i <= count; i++) {
+            if (i == position) {
+                keys[i] = key;
+                values[i] = value;
+            } else {
+                keys[i] = leaf.data.getDouble(LEAF_KEYS + 8 * j);
+                values[i] = leaf.data.getInt(leafValues + 4 * j);
+                j++;
+            }
+        }
+        int middle = keys.length / 2;
+        Page right = allocate(LEAF);
+        writeLeaf(leaf, keys, values, 0, middle);
+        writeLeaf(right, keys, values, middle, keys.length);
+        int next = leaf.data.getInt(NEXT);
+        right.data.putInt(NEXT, next);
+        right.data.putInt(PREVIOUS, leaf.id);
+        leaf.data.putInt(NEXT, right.id);
+        if (next != NONE) {
+            Page nextLeaf = fetch(next);
+            nextLeaf.data.putInt(PREVIOUS, right.id);
+            nextLeaf.dirty = true;
+            release(nextLeaf);
+        }
+        double separator = keys[middle];
+        int separatorValue = values[middle];
+        int rightId = right.id;
+        release(leaf);
+        release(right);
+        size++;
+
+        for (int level = height - 2; level >= 0; level--) {
+            Page parent = fetch(path[level]);
+            count = count(parent);
+            int slot = slots[level];
+            if (count < internalCapacity) {
+                shift(parent, INTERNAL_KEYS, 8, slot, count);
+                shift(parent, internalValues, 4, slot, count);
+                shift(parent, internalChildren, 4, slot + 1, count + 1);
+                parent.data.putDouble(INTERNAL_KEYS + 8 * slot, separator);
+                parent.data.putInt(internalValues + 4 * slot, separatorValue);
+                parent.data.putInt(internalChildren + 4 * (slot + 1), rightId);
+                setCount(parent, count + 1);
+                release(parent);
+                return;
+            }
+            double[] parentKeys = new double[count + 1];
+            int[] parentValues = new int[count + 1];
+            int[] children = new int[count + 2];
+            for (int i = 0, j = 0; i <= count; i++) {
+                if (i == slot) {
+                    parentKeys[i] = separator;
+                    parentValues[i] = separatorValue;
+                } else {
+                    parentKeys[i] = parent.data.getDouble(INTERNAL_KEYS + 8 * j);
+                    parentValues[i] = parent.data.getInt(internalValues + 4 * j);
+                    j++;
+                }
+            }
+            for (int i = 0, j = 0; i <= count + 1; i++) {
+                children[i] = i == slot + 1 ? rightId : parent.data.getInt(internalChildren + 4 * j++);
+            }
+            middle = parentKeys.length / 2;// keys[middle] moves up, it stays in neither half
+            Page sibling = allocate(INTERNAL);
+            writeInternal(parent, parentKeys, parentValues, children, 0, middle);
+            writeInternal(sibling, parentKeys, parentValues, children, middle + 1,
+                parentKeys.length);
+            separator = parentKeys[middle];
+            separatorValue = parentValues[middle];
+            rightId = sibling.id;
+            release(parent);
+            release(sibling);
+        }
+
+        // the root split so the tree grows one level
+        Page newRoot = allocate(INTERNAL);
+        newRoot.data.putDouble(INTERNAL_KEYS, separator);
+        newRoot.data.putInt(internalValues, separatorValue);
+        newRoot.data.putInt(internalChildren, root);
+        newRoot.data.putInt(internalChildren + 4, rightId);
+        setCount(newRoot, 1);
+        root = newRoot.id;
+        height++;
+        release(newRoot);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see DoubleIndex#delete(double, int)
+     */
+    @Override
+    public boolean delete(double key, int value) {
+        if (Double.isNaN(key) || !delete(root, height - 1, key, value)) {
+            return false;
+        }
+        size--;
+        if (height > 1) {
+            Page page = fetch(root);
+            if (count(page) == 0) {// the root has one child, shrink a level
+                root = child(page, 0);
+                height--;
+                free(page);
+            }
+            release(page);
+        }
+        return true;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see DoubleIndex#bulkLoadSorted(double[], int[])
+     */
+    @Override
+    public void bulkLoadSorted(double[] keys, int[] values) {
+        if (keys == null || values == null || keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must be the same size");
+        }
+        if (size != 0) {
+            throw new IllegalStateException("bulkLoad requires an empty tree");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (Double.isNaN(keys[i])) {
+                throw new IllegalArgumentException("NaN can not be used as a key");
+            }
+            if (i > 0 && (keys[i - 1] > keys[i]
+                || (keys[i - 1] == keys[i] && values[i - 1] > values[i]))) {
+                throw new IllegalArgumentException("pairs are not sorted at " + i);
+            }
+        }
+        if (keys.length == 0) {
+            return;
+        }
+
+        // drop the empty root and write the leaves one after another
+        cache.clear();
+        pageCount = 1;
+        freeList = NONE;
+        try {
+            channel.truncate(pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int leafCount = (keys.length + leafCapacity - 1) / leafCapacity;
+        int[] level = new int[leafCount];
+        double[] firstKeys = new double[leafCount];
+        int[] firstValues = new int[leafCount];
+        int next = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int count = (keys.length - next) / (leafCount - leaf);// even share of what's left
+            Page page = allocate(LEAF);
+            writeLeaf(page, keys, values, next, next + count);
+            page.data.putInt(PREVIOUS, leaf == 0 ? NONE : page.id - 1);// pages are consecutive
+            page.data.putInt(NEXT, leaf == leafCount - 1 ? NONE : page.id + 1);
+            level[leaf] = page.id;
+            firstKeys[leaf] = keys[next];
+            firstValues[leaf] = values[next];
+            next += count;
+            release(page);
+        }
+        height = 1;
+
+        // build each internal level from the one below it until only the root is left
+        while (level.length > 1) {
+            int parentCount = (level.length + internalCapacity) / (internalCapacity + 1);
+            int[] parents = new int[parentCount];
+            double[] parentFirstKeys = new double[parentCount];
+            int[] parentFirstValues = new int[parentCount];
+            next = 0;
+            for (int parent = 0; parent < parentCount; parent++) {
+                int count = (level.length - next) / (parentCount - parent);
+                Page page = allocate(INTERNAL);
+                for (int j = 0; j < count; j++, next++) {
+                    if (j > 0) {// the separator is the first pair found in the right child
+                        page.data.putDouble(INTERNAL_KEYS + 8 * (j - 1), firstKeys[next]);
+                        page.data.putInt(internalValues + 4 * (j - 1), firstValues[next]);
+                    }
+                    page.data.putInt(internalChildren + 4 * j, level[next]);
+                }
+                setCount(page, count - 1);
+                parents[parent] = page.id;
+                parentFirstKeys[parent] = firstKeys[next - count];
+                parentFirstValues[parent] = firstValues[next - count];
+                release(page);
+            }
+            level = parents;
+            firstKeys = parentFirstKeys;
+            firstValues = parentFirstValues;
+            height++;
+        }
+        root = level[0];
+        size = keys.length;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#rangeSearch(java.lang.Object, java.lang.String)
+     */
+    @Override
+    public List<Integer> rangeSearch(Double key, String comparator) {
+        List<Integer> finalList = new ArrayList<Integer>();
+        if (key == null || comparator == null) {
+            return finalList;
+        }
+        for (int value : rangeSearchValues(key, comparator)) {
+            finalList.add(value);
+        }
+        return finalList;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see DoubleIndex#rangeIterator(double, boolean, double, boolean)
+     */
+    @Override
+    public PrimitiveIterator.OfInt rangeIterator(double low, boolean lowInclusive, double high,
+        boolean highInclusive) {
+        return new RangeIterator(low, lowInclusive, high, highInclusive);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see DoubleIndex#descendingIterator(double, boolean, double, boolean)
+     */
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator(double high, boolean highInclusive,
+        double low, boolean lowInclusive) {
+        return new DescendingIterator(high, highInclusive, low, lowInclusive);
+    }
+
+
+    /**
+     * Writes every changed page and the header to the file and forces them to the disk
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void flush() throws IOException {
+        for (Page page : cache.values()) {
+            writeBack(page);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(pageSize).putInt(root).putInt(height)
+            .putInt(pageCount).putInt(size).putInt(freeList);
+        header.flip();
+        writeFully(header, 0);
+        channel.force(true);
+    }
+
+
+    /**
+     * Flushes the tree and closes its file
+     *
+     * @throws IOException if the file can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            cache.clear();
+            channel.close();
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        List<Integer> level = Arrays.asList(root);
+        for (int depth = 0; depth < height; depth++) {
+            List<Integer> children = new ArrayList<Integer>();
+            sb.append('{');
+            Iterator<Integer> it = level.iterator();
+            while (it.hasNext()) {
+                Page page = fetch(it.next());
+                int count = count(page);
+                int keys = depth == height - 1 ? LEAF_KEYS : INTERNAL_KEYS;
+                double[] nodeKeys = new double[count];
+                for (int i = 0; i < count; i++) {
+                    nodeKeys[i] = page.data.getDouble(keys + 8 * i);
+                }
+                sb.append(Arrays.toString(nodeKeys));
+                if (depth < height - 1) {
+                    for (int i = 0; i <= count; i++) {
+                        children.add(child(page, i));
+                    }
+                }
+                release(page);
+                if (it.hasNext())
+                    sb.append(", ");
+            }
+            sb.append("}\n");
+            level = children;
+        }
+        return sb.toString();
+    }
+
+
+    /*
+     * Helper method to start an empty tree with a leaf as its root
+     */
+    private void newRoot() {
+        Page page = allocate(LEAF);
+        root = page.id;
+        height = 1;
+        size = 0;
+        release(page);
+    }
+
+
+    /*
+     * Helper method to delete one pair from the subtree of a page. The page is not pinned while
+     * its child is searched.
+     *
+     * @param id page number
+     * @param depth number of levels below the page, 0 for a leaf
+     * @param key key of the pair
+     * @param value value of the pair
+     * @return true if the pair was found. The page may be left with too few keys, its parent
+     *         rebalances it
+     */
+    private boolean delete(int id, int depth, double key, int value) {
+        Page page = fetch(id);
+        if (depth == 0) {
+            int count = count(page);
+            int i = upperBound(page, LEAF_KEYS, leafValues, key, value) - 1;// last equal pair
+            boolean found = i >= 0 && page.data.getDouble(LEAF_KEYS + 8 * i) == key
+                && page.data.getInt(leafValues + 4 * i) == value;
+            if (found) {
+                unshift(page, LEAF_KEYS, 8, i, count);
+                unshift(page, leafValues, 4, i, count);
+                setCount(page, count - 1);
+            }
+            release(page);
+            return found;
+        }
+        int slot = upperBound(page, INTERNAL_KEYS, internalValues, key, value);
+        int child = child(page, slot);
+        release(page);
+        if (!delete(child, depth - 1, key, value)) {
+            return false;
+        }
+        page = fetch(id);
+        rebalance(page, slot, depth == 1);
+        release(page);
+        return true;
+    }
+
+
+    /*
+     * Helper method to fix a child that has too few keys after a delete, by moving a key from a
+     * sibling that can spare one or else by merging it with a sibling
+     *
+     * @param parent the pinned parent page
+     * @param i index of the child
+     * @param leaves true if the children are leaves
+     */
+    private void rebalance(Page parent, int i, boolean leaves) {
+        int minimum = leaves ? leafMinimum : internalMinimum;
+        Page page = fetch(child(parent, i));
+        if (count(page) >= minimum) {
+            release(page);
+            return;
+        }
+        Page left = i > 0 ? fetch(child(parent, i - 1)) : null;
+        Page right = i < count(parent) ? fetch(child(parent, i + 1)) : null;
+        if (left != null && count(left) > minimum) {
+            moveRight(parent, i - 1, left, page, leaves);
+        } else if (right != null && count(right) > minimum) {
+            moveLeft(parent, i, page, right, leaves);
+        } else if (left != null) {
+            merge(parent, i - 1, left, page, leaves);
+        } else {
+            merge(parent, i, page, right, leaves);
+        }
+        release(page);
+        if (left != null) {
+            release(left);
+        }
+        if (right != null) {
+            release(right);
+        }
+    }
+
+
+    /*
+     * Helper method to move the last key of a node to the front of its right sibling. Leaves
+     * move a pair and take the new first key of the right leaf as their separator, internal
+     * nodes rotate the key through the separator.
+     *
+     * @param parent the parent page
+     * @param slot index of the separator between the two nodes
+     * @param left the left node
+     * @param right the right node
+     * @param leaves true if the nodes are leaves
+     */
+    private void moveRight(Page parent, int slot, Page left, Page right, boolean leaves) {
+        int leftCount = count(left);
+        int rightCount = count(right);
+        if (leaves) {
+            shift(right, LEAF_KEYS, 8, 0, rightCount);
+            shift(right, leafValues, 4, 0, rightCount);
+            right.data.putDouble(LEAF_KEYS, left.data.getDouble(LEAF_KEYS + 8 * (leftCount - 1)));
+            right.data.putInt(leafValues, left.data.getInt(leafValues + 4 * (leftCount - 1)));
+            parent.data.putDouble(INTERNAL_KEYS + 8 * slot, right.data.getDouble(LEAF_KEYS));
+            parent.data.putInt(internalValues + 4 * slot, right.data.getInt(leafValues));
+        } else {
+            shift(right, INTERNAL_KEYS, 8, 0, rightCount);
+            shift(right, internalValues, 4, 0, rightCount);
+            shift(right, internalChildren, 4, 0, rightCount + 1);
+            right.data.putDouble(INTERNAL_KEYS, parent.data.getDouble(INTERNAL_KEYS + 8 * slot));
+            right.data.putInt(internalValues, parent.data.getInt(internalValues + 4 * slot));
+            right.data.putInt(internalChildren, child(left, leftCount));
+            parent.data.putDouble(INTERNAL_KEYS + 8 * slot,
+                left.data.getDouble(INTERNAL_KEYS + 8 * (leftCount - 1)));
+            parent.data.putInt(internalValues + 4 * slot,
+                left.data.getInt(internalValues + 4 * (leftCount - 1)));
+        }
+        setCount(left, leftCount - 1);
+        setCount(right, rightCount + 1);
+        parent.dirty = true;
+    }
+
+
+    /*
+     * Helper method to move the first key of a node to the end of its left sibling, the mirror
+     * of moveRight
+     *
+     * @param parent the parent page
+     * @param slot index of the separator between the two nodes
+     * @param left the left node
+     * @param right the right node
+     * @param leaves true if the nodes are leaves
+     */
+    private void moveLeft(Page parent, int slot, Page left, Page right, boolean leaves) {
+        int leftCount = count(left);
+        int rightCount = count(right);
+        if (leaves) {
+            left.data.putDouble(LEAF_KEYS + 8 * leftCount, right.data.getDouble(LEAF_KEYS));
+            left.data.putInt(leafValues + 4 * leftCount, right.data.getInt(leafValues));
+            unshift(right, LEAF_KEYS, 8, 0, rightCount);
+            unshift(right, leafValues, 4, 0, rightCount);
+            parent.data.putDouble(INTERNAL_KEYS + 8 * slot, right.data.getDouble(LEAF_KEYS));
+            parent.data.putInt(internalValues + 4 * slot, right.data.getInt(leafValues));
+        } else {
+            left.data.putDouble(INTERNAL_KEYS + 8 * leftCount,
+                parent.data.getDouble(INTERNAL_KEYS + 8 * slot));
+            left.data.putInt(internalValues + 4 * leftCount,
+                parent.data.getInt(internalValues + 4 * slot));
+            left.data.putInt(internalChildren + 4 * (leftCount + 1), child(right, 0));
+            parent.data.putDouble(INTERNAL_KEYS + 8 * slot, right.data.getDouble(INTERNAL_KEYS));
+            parent.data.putInt(internalValues + 4 * slot, right.data.getInt(internalValues));
+            unshift(right, INTERNAL_KEYS, 8, 0, rightCount);
+            unshift(right, internalValues, 4, 0, rightCount);
+            unshift(right, internalChildren, 4, 0, rightCount + 1);
+        }
+        setCount(left, leftCount + 1);
+        setCount(right, rightCount - 1);
+        parent.dirty = true;
+    }
+
+
+    /*
+     * Helper method to merge a node into its left sibling, free its page and remove the
+     * separator between them from the parent
+     *
+     * @param parent the parent page
+     * @param slot index of the separator between the two nodes
+     * @param left the left node, which keeps the keys of both
+     * @param right the right node, which is freed
+     * @param leaves true if the nodes are leaves
+     */
+    private void merge(Page parent, int slot, Page left, Page right, boolean leaves) {
+        int leftCount = count(left);
+        int rightCount = count(right);
+        byte[] leftBytes = left.data.array();
+        byte[] rightBytes = right.data.array();
+        if (leaves) {
+            System.arraycopy(rightBytes, LEAF_KEYS, leftBytes, LEAF_KEYS + 8 * leftCount,
+                8 * rightCount);
+            System.arraycopy(rightBytes, leafValues, leftBytes, leafValues + 4 * leftCount,
+                4 * rightCount);
+            setCount(left, leftCount + rightCount);
+            int next = right.data.getInt(NEXT);// unlink the right leaf
+            left.data.putInt(NEXT, next);
+            if (next != NONE) {
+                Page nextLeaf = fetch(next);
+                nextLeaf.data.putInt(PREVIOUS, left.id);
+                nextLeaf.dirty = true;
+                release(nextLeaf);
+            }
+        } else {// the separator comes down between the two halves
+            left.data.putDouble(INTERNAL_KEYS + 8 * leftCount,
+                parent.data.getDouble(INTERNAL_KEYS + 8 * slot));
+            left.data.putInt(internalValues + 4 * leftCount,
+                parent.data.getInt(internalValues + 4 * slot));
+            System.arraycopy(rightBytes, INTERNAL_KEYS, leftBytes,
+                INTERNAL_KEYS + 8 * (leftCount + 1), 8 * rightCount);
+            System.arraycopy(rightBytes, internalValues, leftBytes,
+                internalValues + 4 * (leftCount + 1), 4 * rightCount);
+            System.arraycopy(rightBytes, internalChildren, leftBytes,
+                internalChildren + 4 * (leftCount + 1), 4 * (rightCount + 1));
+            setCount(left, leftCount + rightCount + 1);
+        }
+        int parentCount = count(parent);
+        unshift(parent, INTERNAL_KEYS, 8, slot, parentCount);
+        unshift(parent, internalValues, 4, slot, parentCount);
+        unshift(parent, internalChildren, 4, slot + 1, parentCount + 1);
+        setCount(parent, parentCount - 1);
+        free(right);
+    }
+
+
+    /*
+     * Helper method to find the leftmost leaf that could hold the key
+     *
+     * @param key key to find
+     * @return page number of the leaf
+     */
+    private int findLeaf(double key) {
+        int id = root;
+        for (int level = 0; level < height - 1; level++) {
+            Page page = fetch(id);
+            id = child(page, lowerBound(page, INTERNAL_KEYS, key));
+            release(page);
+        }
+        return id;
+    }
+
+
+    /*
+     * Helper method to find the rightmost leaf that could hold a key below (or at) the key
+     *
+     * @param key key to find
+     * @param inclusive if keys equal to key are wanted
+     * @return page number of the leaf
+     */
+    private int findLastLeaf(double key, boolean inclusive) {
+        int id = root;
+        for (int level = 0; level < height - 1; level++) {
+            Page page = fetch(id);
+            id = child(page, inclusive ? upperBound(page, INTERNAL_KEYS, key)
+                : lowerBound(page, INTERNAL_KEYS, key));
+            release(page);
+        }
+        return id;
+    }
+
+
+    /*
+     * Helper method to find the first key in a page that is >= key
+     *
+     * @param page the page
+     * @param keys where the keys start in the page
+     * @param key key to find
+     * @return index of the key, the key count if every key is smaller
+     */
+    private static int lowerBound(Page page, int keys, double key) {
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (page.data.getDouble(keys + 8 * middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to find the first key in a page that is > key
+     *
+     * @param page the page
+     * @param keys where the keys start in the page
+     * @param key key to find
+     * @return index of the key, the key count if every key is smaller or equal
+     */
+    private static int upperBound(Page page, int keys, double key) {
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (page.data.getDouble(keys + 8 * middle) <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to find the first pair in a page that is greater than the given pair,
+     * ordering pairs by key and then by value
+     *
+     * @param page the page
+     * @param keys where the keys start in the page
+     * @param values where the values start in the page
+     * @param key key of the pair to find
+     * @param value value of the pair to find
+     * @return index of the pair, the key count if every pair is smaller or equal
+     */
+    private static int upperBound(Page page, int keys, int values, double key, int value) {
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            double middleKey = page.data.getDouble(keys + 8 * middle);
+            if (middleKey < key
+                || (middleKey == key && page.data.getInt(values + 4 * middle) <= value)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to get the number of keys in a page
+     */
+    private static int count(Page page) {
+        return page.data.getInt(COUNT);
+    }
+
+
+    /*
+     * Helper method to set the number of keys in a page and mark it changed
+     */
+    private static void setCount(Page page, int count) {
+        page.data.putInt(COUNT, count);
+        page.dirty = true;
+    }
+
+
+    /*
+     * Helper method to get a child of an internal node
+     */
+    private int child(Page page, int i) {
+        return page.data.getInt(internalChildren + 4 * i);
+    }
+
+
+    /*
+     * Helper method to move the entries [from, count) of an array in a page one slot right
+     *
+     * @param page the page
+     * @param start where the array starts in the page
+     * @param width size of one entry in bytes
+     * @param from first entry to move
+     * @param count number of entries in use
+     */
+    private static void shift(Page page, int start, int width, int from, int count) {
+        if (from < count) {
+            byte[] bytes = page.data.array();
+            System.arraycopy(bytes, start + width * from, bytes, start + width * (from + 1),
+                width * (count - from));
+        }
+    }
+
+
+    /*
+     * Helper method to move the entries (from, count) of an array in a page one slot left, over
+     * the entry at from
+     *
+     * @param page the page
+     * @param start where the array starts in the page
+     * @param width size of one entry in bytes
+     * @param from entry to overwrite
+     * @param count number of entries in use
+     */
+    private static void unshift(Page page, int start, int width, int from, int count) {
+        if (from + 1 < count) {
+            byte[] bytes = page.data.array();
+            System.arraycopy(bytes, start + width * (from + 1), bytes, start + width * from,
+                width * (count - from - 1));
+        }
+    }
+
+
+    /*
+     * Helper method to fill a leaf page with keys[from..to) and values[from..to)
+     */
+    private void writeLeaf(Page page, double[] keys, int[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            page.data.putDouble(LEAF_KEYS + 8 * (i - from), keys[i]);
+            page.data.putInt(leafValues + 4 * (i - from), values[i]);
+        }
+        setCount(page, to - from);
+    }
+
+
+    /*
+     * Helper method to fill an internal page with the separators keys[from..to) and
+     * values[from..to) and children[from..to]
+     */
+    private void writeInternal(Page page, double[] keys, int[] values, int[] children, int from,
+        int to) {
+        for (int i = from; i < to; i++) {
+            page.data.putDouble(INTERNAL_KEYS + 8 * (i - from), keys[i]);
+            page.data.putInt(internalValues + 4 * (i - from), values[i]);
+        }
+        for (int i = from; i <= to; i++) {
+            page.data.putInt(internalChildren + 4 * (i - from), children[i]);
+        }
+        setCount(page, to - from);
+    }
+
+
+    /*
+     * Helper method to get a page from the cache, reading it from the file on a miss. The page
+     * is pinned so it can not be evicted until it is released.
+     *
+     * @param id page number
+     * @return the pinned page
+     */
+    private synchronized Page fetch(int id) {
+        Page page = cache.get(id);
+        if (page != null) {
+            hits++;
+        } else {
+            misses++;
+            evict();
+            page = new Page(id, pageSize);
+            try {
+                readFully(page.data, (long) id * pageSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put(id, page);
+        }
+        page.pins++;
+        return page;
+    }
+
+
+    /*
+     * Helper method to get an empty page, the first free page if there is one or else a new
+     * page at the end of the file. The page is pinned.
+     *
+     * @param type LEAF or INTERNAL
+     * @return the pinned page
+     */
+    private synchronized Page allocate(byte type) {
+        Page page;
+        if (freeList != NONE) {
+            page = fetch(freeList);
+            freeList = page.data.getInt(NEXT);
+            Arrays.fill(page.data.array(), (byte) 0);
+        } else {
+            evict();
+            page = new Page(pageCount++, pageSize);
+            page.pins++;
+            cache.put(page.id, page);
+        }
+        page.data.put(0, type);
+        page.dirty = true;
+        return page;
+    }
+
+
+    /*
+     * Helper method to add a page that is no longer part of the tree to the free list. The
+     * caller still releases it.
+     */
+    private void free(Page page) {
+        Arrays.fill(page.data.array(), (byte) 0);
+        page.data.put(0, FREE);
+        page.data.putInt(NEXT, freeList);
+        page.dirty = true;
+        freeList = page.id;
+    }
+
+
+    /*
+     * Helper method to unpin a page
+     */
+    private synchronized void release(Page page) {
+        page.pins--;
+    }
+
+
+    /*
+     * Helper method to make room in the cache by writing back and dropping the least recently
+     * used pages that are not pinned
+     */
+    private void evict() {
+        Iterator<Page> it = cache.values().iterator();
+        while (cache.size() >= cachedPages && it.hasNext()) {
+            Page page = it.next();
+            if (page.pins == 0) {
+                try {
+                    writeBack(page);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                it.remove();
+            }
+        }
+    }
+
+
+    /*
+     * Helper method to write a page to the file if it changed
+     */
+    private void writeBack(Page page) throws IOException {
+        if (page.dirty) {
+            ByteBuffer data = page.data.duplicate();
+            data.clear();
+            writeFully(data, (long) page.id * pageSize);
+            page.dirty = false;
+        }
+    }
+
+
+    /*
+     * Helper method to fill a buffer from the file
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Page past the end of the file at " + position);
+            }
+        }
+    }
+
+
+    /*
+     * Helper method to write a whole buffer to the file
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * This class holds one cached page
+     */
+    private static class Page {
+
+        // Page number
+        final int id;
+
+        // Contents of the page
+        final ByteBuffer data;
+
+        // If the page changed since it was read or written
+        boolean dirty;
+
+        // Number of operations using the page, a pinned page is not evicted
+        int pins;
+
+        /**
+         * Constructor
+         *
+         * @param id page number
+         * @param pageSize size of the page
+         */
+        Page(int id, int pageSize) {
+            this.id = id;
+            this.data = ByteBuffer.allocate(pageSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+    } // End of class Page
+
+    /**
+     * This class holds a copy of one leaf so an iterator does not keep pages pinned between
+     * calls
+     */
+    private class LeafCopy {
+
+        // Keys and values of the leaf
+        final double[] keys = new double[leafCapacity];
+        final int[] values = new int[leafCapacity];
+
+        // Number of keys, and the neighbour leaves
+        int count;
+        int next;
+        int previous;
+
+        /**
+         * Copies a leaf
+         *
+         * @param id page number of the leaf, NONE for no leaf
+         * @return true if there was a leaf to copy
+         */
+        boolean load(int id) {
+            if (id == NONE) {
+                return false;
+            }
+            Page page = fetch(id);
+            count = count(page);
+            next = page.data.getInt(NEXT);
+            previous = page.data.getInt(PREVIOUS);
+            ByteBuffer data = page.data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            data.position(LEAF_KEYS);
+            data.asDoubleBuffer().get(keys, 0, count);
+            data.position(leafValues);
+            data.asIntBuffer().get(values, 0, count);
+            release(page);
+            return true;
+        }
+
+    } // End of class LeafCopy
+
+    /**
+     * This class walks the leaf pages lazily for rangeIterator
+     */
+    private class RangeIterator implements PrimitiveIterator.OfInt {
+
+        // Copy of the leaf holding the next value
+        private final LeafCopy leaf = new LeafCopy();
+
+        // False when there are no more values
+        private boolean valid;
+
+        // Index of the next value in leaf
+        private int i;
+
+        // Bounds of the keys
+        private final double low;
+        private final boolean lowInclusive;
+        private final double high;
+        private final boolean highInclusive;
+
+        /**
+         * Descends to the first value in the range
+         */
+        RangeIterator(double low, boolean lowInclusive, double high, boolean highInclusive) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            if (Double.isNaN(low) || Double.isNaN(high) || low > high
+                || (low == high && !(lowInclusive && highInclusive))) {
+                return;// the range is empty
+            }
+            valid = leaf.load(findLeaf(low));
+            i = lowInclusive ? DoubleBPTree.lowerBound(leaf.keys, leaf.count, low)
+                : DoubleBPTree.upperBound(leaf.keys, leaf.count, low);
+            skipToValue();
+        }
+
+        /**
+         * Moves to the next key that is past low and ends the walk once a key is past high
+         */
+        private void skipToValue() {
+            while (valid) {
+                if (i == leaf.count) {
+                    valid = leaf.load(leaf.next);
+                    i = 0;
+                    continue;
+                }
+                double key = leaf.keys[i];
+                if (key > high || (key == high && !highInclusive)) {
+                    valid = false;
+                } else if (key < low || (key == low && !lowInclusive)) {
+                    i++;// duplicates of an exclusive low can run past the first leaf
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return valid;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.PrimitiveIterator.OfInt#nextInt()
+         */
+        @Override
+        public int nextInt() {
+            if (!valid) {
+                throw new NoSuchElementException();
+            }
+            int value = leaf.values[i++];
+            skipToValue();
+            return value;
+        }
+
+    } // End of class RangeIterator
+
+    /**
+     * This class walks the leaf pages backwards lazily for descendingIterator
+     */
+    private class DescendingIterator implements PrimitiveIterator.OfInt {
+
+        // Copy of the leaf holding the next value
+        private final LeafCopy leaf = new LeafCopy();
+
+        // False when there are no more values
+        private boolean valid;
+
+        // Index of the next value in leaf
+        private int i;
+
+        // Bounds of the keys
+        private final double high;
+        private final boolean highInclusive;
+        private final double low;
+        private final boolean lowInclusive;
+
+        /**
+         * Descends to the last value in the range
+         */
+        DescendingIterator(double high, boolean highInclusive, double low,
+            boolean lowInclusive) {
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            if (Double.isNaN(low) || Double.isNaN(high) || low > high
+                || (low == high && !(lowInclusive && highInclusive))) {
+                return;// the range is empty
+            }
+            valid = leaf.load(findLastLeaf(high, highInclusive));
+            i = (highInclusive ? DoubleBPTree.upperBound(leaf.keys, leaf.count, high)
+                : DoubleBPTree.lowerBound(leaf.keys, leaf.count, high)) - 1;
+            skipToValue();
+        }
+
+        /**
+         * Moves to the previous key that is below high and ends the walk once a key is past low
+         */
+        private void skipToValue() {
+            while (valid) {
+                if (i < 0) {
+                    valid = leaf.load(leaf.previous);
+                    i = leaf.count - 1;
+                    continue;
+                }
+                double key = leaf.keys[i];
+                if (key < low || (key == low && !lowInclusive)) {
+                    valid = false;
+                } else if (key > high || (key == high && !highInclusive)) {
+                    i--;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return valid;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.PrimitiveIterator.OfInt#nextInt()
+         */
+        @Override
+        public int nextInt() {
+            if (!valid) {
+                throw new NoSuchElementException();
+            }
+            int value = leaf.values[i--];
+            skipToValue();
+            return value;
+        }
+
+    } // End of class DescendingIterator
+
+} // End of class DiskBPTree
@@ -0,0 +1,1109 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+
+/**
+ * A B+ tree specialized for double keys and int values, used for the nutrient indexes of
+ * FoodData. The keys and values of each node are kept in primitive arrays instead of ArrayLists
+ * of boxed objects, which makes the tree several times smaller than a BPTree<Double, Integer>
+ * and keeps boxing out of searches. Values are expected to be food ordinals, the position of a
+ * FoodItem in FoodData.
+ *
+ * Pairs are ordered by key and then by value, and the separators of the internal nodes are
+ * pairs too, so each pair has exactly one path from the root even when its key has many
+ * duplicates. That keeps insert and delete O(log n); searches by key alone are unaffected.
+ *
+ * The generic BPTreeADT contract is still available through the boxed insert and rangeSearch
+ * methods, and the DoubleIndex searches it does not override are built on its iterators.
+ *
+ * @author Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ */
+public class DoubleBPTree implements DoubleIndex {
+
+    // Root of the tree
+    private Node root;
+
+    // Branching factor is the number of children nodes
+    // for internal nodes of the tree
+    private int branchingFactor;
+
+    // Number of key-value pairs in the tree
+    private int size;
+
+    // Pair that moves up to the parent when a node splits, set by Node.insert
+    private double splitKey;
+    private int splitValue;
+
+
+    /**
+     * Public constructor
+     *
+     * @param branchingFactor
+     */
+    public DoubleBPTree(int branchingFactor) {
+        if (branchingFactor <= 2) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        this.branchingFactor = branchingFactor;
+        root = new LeafNode();
+    }
+
+
+    /**
+     * Gets the number of key-value pairs in the tree
+     *
+     * @return size of the tree
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#insert(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void insert(Double key, Integer value) {
+        insert(key.doubleValue(), value.intValue());
+    }
+
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree. Duplicate keys are allowed.
+     *
+     * @param key key, must not be NaN
+     * @param value value
+     * @throws IllegalArgumentException if the key is NaN
+     */
+    public void insert(double key, int value) {
+        if (Double.isNaN(key)) {
+            throw new IllegalArgumentException("NaN can not be used as a key");
+        }
+        Node right = root.insert(key, value);
+        if (right != null) {// the root split so the tree grows one level
+            InternalNode newRoot = new InternalNode();
+            newRoot.keys[0] = splitKey;
+            newRoot.values[0] = splitValue;
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+        size++;
+    }
+
+
+    /**
+     * Deletes one pair with the key and value in O(log n). The leaf it is deleted from borrows a
+     * pair from a neighbour leaf, or is merged into one, if it falls below half full, and the
+     * same is done up the tree for the internal nodes that lose a child.
+     *
+     * @param key key of the pair
+     * @param value value of the pair
+     * @return true if the pair was found and deleted, false if it is not in the tree
+     */
+    public boolean delete(double key, int value) {
+        if (Double.isNaN(key) || !root.delete(key, value)) {
+            return false;
+        }
+        if (root instanceof DoubleBPTree.InternalNode && root.count == 0) {
+            root = ((InternalNode) root).children[0];// the root has one child, shrink a level
+        }
+        size--;
+        return true;
+    }
+
+
+    /**
+     * Builds the tree bottom-up from an unordered batch of key-value pairs. The pairs are sorted
+     * once by key and value, packed into full leaf nodes and then each internal level is built
+     * from the level below it.
+     *
+     * Note: the tree must be empty; use insert to add to a tree that already has data.
+     *
+     * @param keys keys to load, none may be NaN
+     * @param values values to load, values[i] is paired with keys[i]
+     * @throws IllegalArgumentException if the arrays are null, of different lengths or a key is
+     *         NaN
+     * @throws IllegalStateException if the tree is not empty
+     */
+    public void bulkLoad(double[] keys, int[] values) {
+        if (keys == null || values == null || keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must be the same size");
+        }
+        double[] sortedKeys = keys.clone();
+        int[] sortedValues = values.clone();
+        sortByKey(sortedKeys, sortedValues);
+        bulkLoadSorted(sortedKeys, sortedValues);
+    }
+
+
+    /**
+     * Builds the tree bottom-up from key-value pairs that are already in ascending order of key
+     * and then value, the order sortByKey puts them in
+     *
+     * @param keys keys to load in ascending order, none may be NaN
+     * @param values values to load, values[i] is paired with keys[i] and equal keys have
+     *        ascending values
+     * @throws IllegalArgumentException if the arrays are null, of different lengths, a key is NaN
+     *         or the pairs are not sorted
+     * @throws IllegalStateException if the tree is not empty
+     */
+    public void bulkLoadSorted(double[] keys, int[] values) {
+        if (keys == null || values == null || keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must be the same size");
+        }
+        if (size != 0) {
+            throw new IllegalStateException("bulkLoad requires an empty tree");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (Double.isNaN(keys[i])) {
+                throw new IllegalArgumentException("NaN can not be used as a key");
+            }
+            if (i > 0 && (keys[i - 1] > keys[i]
+                || (keys[i - 1] == keys[i] && values[i - 1] > values[i]))) {
+                throw new IllegalArgumentException("pairs are not sorted at " + i);
+            }
+        }
+        if (keys.length == 0) {
+            return;
+        }
+
+        // pack the leaves with at most branchingFactor - 1 keys each, spread evenly
+        int leafCount = (keys.length + branchingFactor - 2) / (branchingFactor - 1);
+        Node[] level = new Node[leafCount];
+        LeafNode previous = null;
+        int next = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int count = (keys.length - next) / (leafCount - leaf);// even share of what's left
+            LeafNode current = new LeafNode();
+            System.arraycopy(keys, next, current.keys, 0, count);
+            System.arraycopy(values, next, current.values, 0, count);
+            current.count = count;
+            next += count;
+            current.previous = previous;// links the leaves together in order
+            if (previous != null) {
+                previous.next = current;
+            }
+            previous = current;
+            level[leaf] = current;
+        }
+
+        // build each internal level from the one below it until only the root is left
+        while (level.length > 1) {
+            int parentCount = (level.length + branchingFactor - 1) / branchingFactor;
+            Node[] parents = new Node[parentCount];
+            next = 0;
+            for (int parent = 0; parent < parentCount; parent++) {
+                int count = (level.length - next) / (parentCount - parent);
+                InternalNode current = new InternalNode();
+                for (int j = 0; j < count; j++, next++) {
+                    if (j > 0) {// the separator is the first pair found in the right child
+                        current.keys[j - 1] = level[next].getFirstLeafKey();
+                        current.values[j - 1] = level[next].getFirstLeafValue();
+                    }
+                    current.children[j] = level[next];
+                }
+                current.count = count - 1;
+                parents[parent] = current;
+            }
+            level = parents;
+        }
+        root = level[0];
+        size = keys.length;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see BPTreeADT#rangeSearch(java.lang.Object, java.lang.String)
+     */
+    @Override
+    public List<Integer> rangeSearch(Double key, String comparator) {
+        List<Integer> finalList = new ArrayList<Integer>();
+        if (key == null || comparator == null) {
+            return finalList;
+        }
+        for (int value : rangeSearchValues(key, comparator)) {
+            finalList.add(value);
+        }
+        return finalList;
+    }
+
+
+    /**
+     * Gets the values whose keys are between low and high, boxed for the generic API
+     *
+     * @param low lower bound of the keys, null for no lower bound
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys, null for no upper bound
+     * @param highInclusive if keys equal to high are included
+     * @return list of values in ascending key order; if nothing found, return empty list
+     */
+    public List<Integer> rangeSearch(Double low, boolean lowInclusive, Double high,
+        boolean highInclusive) {
+        List<Integer> finalList = new ArrayList<Integer>();
+        for (int value : rangeSearchValues(low == null ? Double.NEGATIVE_INFINITY : low,
+            lowInclusive, high == null ? Double.POSITIVE_INFINITY : high, highInclusive)) {
+            finalList.add(value);
+        }
+        return finalList;
+    }
+
+
+    /**
+     * Gets the values whose keys are between low and high in a single pass: the tree is
+     * descended once to low and then the leaf nodes are walked until a key passes high. Use
+     * the infinities for a range that is open on one side.
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @return array of values in ascending key order, empty if nothing was found
+     */
+    public int[] rangeSearchValues(double low, boolean lowInclusive, double high,
+        boolean highInclusive) {
+        if (Double.isNaN(low) || Double.isNaN(high) || low > high
+            || (low == high && !(lowInclusive && highInclusive))) {
+            return new int[0];// the range is empty
+        }
+        LeafNode leaf = findLeaf(low);
+        int i = lowInclusive ? lowerBound(leaf.keys, leaf.count, low)
+            : upperBound(leaf.keys, leaf.count, low);
+
+        int[] found = new int[16];
+        int count = 0;
+        while (leaf != null) {
+            for (; i < leaf.count; i++) {
+                double key = leaf.keys[i];
+                if (key > high || (key == high && !highInclusive)) {
+                    return Arrays.copyOf(found, count);
+                }
+                if (key > low || (lowInclusive && key == low)) {// duplicates of an exclusive
+                                                                // low can run past the first leaf
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = leaf.values[i];
+                }
+            }
+            leaf = leaf.next;
+            i = 0;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high. The tree is
+     * descended once and each call to nextInt moves one entry along the leaf nodes, so reading
+     * the first page of a huge range only costs as much as the page.
+     *
+     * Note: the tree must not be changed while the iterator is in use.
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @return iterator over the values in ascending key order
+     */
+    public PrimitiveIterator.OfInt rangeIterator(double low, boolean lowInclusive, double high,
+        boolean highInclusive) {
+        return new RangeIterator(low, lowInclusive, high, highInclusive);
+    }
+
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high, from the largest
+     * key down to the smallest. The tree is descended once to high and then the previous links
+     * of the leaf nodes are followed, so reading the first k values costs about k steps.
+     *
+     * Note: the tree must not be changed while the iterator is in use.
+     *
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @return iterator over the values in descending key order
+     */
+    public PrimitiveIterator.OfInt descendingIterator(double high, boolean highInclusive,
+        double low, boolean lowInclusive) {
+        return new DescendingIterator(high, highInclusive, low, lowInclusive);
+    }
+
+
+    /**
+     * Gets every key in the tree in ascending order, walking the leaf nodes once
+     *
+     * @return array of size() keys
+     */
+    double[] sortedKeys() {
+        double[] keys = new double[size];
+        int count = 0;
+        for (LeafNode leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.keys, 0, keys, count, leaf.count);
+            count += leaf.count;
+        }
+        return keys;
+    }
+
+
+    /*
+     * Helper method to find the leftmost leaf that could hold the key
+     *
+     * @param key key to find
+     * @return leaf node
+     */
+    private LeafNode findLeaf(double key) {
+        Node node = root;
+        while (node instanceof DoubleBPTree.InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            node = internal.children[lowerBound(internal.keys, internal.count, key)];
+        }
+        return (LeafNode) node;
+    }
+
+
+    /*
+     * Helper method to find the rightmost leaf that could hold a key below (or at) the key
+     *
+     * @param key key to find
+     * @param inclusive if keys equal to key are wanted
+     * @return leaf node
+     */
+    private LeafNode findLastLeaf(double key, boolean inclusive) {
+        Node node = root;
+        while (node instanceof DoubleBPTree.InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            node = internal.children[inclusive ? upperBound(internal.keys, internal.count, key)
+                : lowerBound(internal.keys, internal.count, key)];
+        }
+        return (LeafNode) node;
+    }
+
+
+    /*
+     * Helper method to find the leaf with the smallest keys
+     *
+     * @return leaf node
+     */
+    private LeafNode firstLeaf() {
+        Node node = root;
+        while (node instanceof DoubleBPTree.InternalNode) {
+            node = ((InternalNode) node).children[0];
+        }
+        return (LeafNode) node;
+    }
+
+
+    /*
+     * Helper method to find the first index in keys[0..count) whose key is >= key, so among
+     * duplicates the leftmost one is found
+     *
+     * @param keys sorted keys
+     * @param count number of keys in use
+     * @param key key to find
+     * @return index of the first key >= key, count if there is none
+     */
+    static int lowerBound(double[] keys, int count, double key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to find the first index in keys[0..count) whose key is > key
+     *
+     * @param keys sorted keys
+     * @param count number of keys in use
+     * @param key key to find
+     * @return index of the first key > key, count if there is none
+     */
+    static int upperBound(double[] keys, int count, double key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to find the first pair in keys[0..count) and values[0..count) that is
+     * greater than the given pair, ordering pairs by key and then by value
+     *
+     * @param keys sorted keys
+     * @param values values of the keys, ascending among equal keys
+     * @param count number of pairs in use
+     * @param key key of the pair to find
+     * @param value value of the pair to find
+     * @return index of the first greater pair, count if there is none
+     */
+    static int upperBound(double[] keys, int[] values, int count, double key, int value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key || (keys[middle] == key && values[middle] <= value)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to sort key-value pairs in place by key and then by value, the order
+     * bulkLoadSorted expects
+     *
+     * @param keys keys to sort
+     * @param values values[i] is paired with keys[i]
+     */
+    static void sortByKey(double[] keys, int[] values) {
+        sort(keys, values, 0, keys.length, new double[keys.length], new int[keys.length]);
+    }
+
+
+    /*
+     * Helper method to sort the pairs in keys[from..to) and values[from..to) by key and value. A
+     * merge sort is used because Arrays.sort on primitives can not carry the values along.
+     */
+    private static void sort(double[] keys, int[] values, int from, int to, double[] keyBuffer,
+        int[] valueBuffer) {
+        if (to - from <= 16) {// insertion sort for short runs
+            for (int i = from + 1; i < to; i++) {
+                double key = keys[i];
+                int value = values[i];
+                int j = i - 1;
+                while (j >= from && (keys[j] > key || (keys[j] == key && values[j] > value))) {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                values[j + 1] = value;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(keys, values, from, middle, keyBuffer, valueBuffer);
+        sort(keys, values, middle, to, keyBuffer, valueBuffer);
+        if (keys[middle - 1] < keys[middle]
+            || (keys[middle - 1] == keys[middle] && values[middle - 1] <= values[middle])) {
+            return;// already in order
+        }
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(values, from, valueBuffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && (keyBuffer[left] < keyBuffer[right]
+                || (keyBuffer[left] == keyBuffer[right]
+                    && valueBuffer[left] <= valueBuffer[right])))) {
+                keys[i] = keyBuffer[left];
+                values[i] = valueBuffer[left++];
+            } else {
+                keys[i] = keyBuffer[right];
+                values[i] = valueBuffer[right++];
+            }
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        Queue<List<Node>> queue = new LinkedList<List<Node>>();
+        queue.add(Arrays.asList(root));
+        StringBuilder sb = new StringBuilder();
+        while (!queue.isEmpty()) {
+            Queue<List<Node>> nextQueue = new LinkedList<List<Node>>();
+            while (!queue.isEmpty()) {
+                List<Node> nodes = queue.remove();
+                sb.append('{');
+                Iterator<Node> it = nodes.iterator();
+                while (it.hasNext()) {
+                    Node node = it.next();
+                    sb.append(node.toString());
+                    if (it.hasNext())
+                        sb.append(", ");
+                    if (node instanceof DoubleBPTree.InternalNode) {
+                        InternalNode internal = (InternalNode) node;
+                        nextQueue.add(Arrays.asList(internal.children).subList(0,
+                            internal.count + 1));
+                    }
+                }
+                sb.append('}');
+                if (!queue.isEmpty())
+                    sb.append(", ");
+                else {
+                    sb.append('\n');
+                }
+            }
+            queue = nextQueue;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This class walks the leaf nodes lazily for rangeIterator
+     */
+    private class RangeIterator implements PrimitiveIterator.OfInt {
+
+        // Leaf node holding the next value, null when there are no more values
+        private LeafNode current;
+
+        // Index of the next value in current
+        private int i;
+
+        // Bounds of the keys
+        private final double low;
+        private final boolean lowInclusive;
+        private final double high;
+        private final boolean highInclusive;
+
+        /**
+         * Descends to the first value in the range
+         */
+        RangeIterator(double low, boolean lowInclusive, double high, boolean highInclusive) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            if (Double.isNaN(low) || Double.isNaN(high) || low > high
+                || (low == high && !(lowInclusive && highInclusive))) {
+                return;// the range is empty
+            }
+            current = findLeaf(low);
+            i = lowInclusive ? lowerBound(current.keys, current.count, low)
+                : upperBound(current.keys, current.count, low);
+            skipToValue();
+        }
+
+        /**
+         * Moves to the next key that is past low and ends the walk once a key is past high
+         */
+        private void skipToValue() {
+            while (current != null) {
+                if (i == current.count) {
+                    current = current.next;
+                    i = 0;
+                    continue;
+                }
+                double key = current.keys[i];
+                if (key > high || (key == high && !highInclusive)) {
+                    current = null;
+                } else if (key < low || (key == low && !lowInclusive)) {
+                    i++;// duplicates of an exclusive low can run past the first leaf
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.PrimitiveIterator.OfInt#nextInt()
+         */
+        @Override
+        public int nextInt() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            int value = current.values[i++];
+            skipToValue();
+            return value;
+        }
+
+    } // End of class RangeIterator
+
+    /**
+     * This class walks the leaf nodes backwards lazily for descendingIterator
+     */
+    private class DescendingIterator implements PrimitiveIterator.OfInt {
+
+        // Leaf node holding the next value, null when there are no more values
+        private LeafNode current;
+
+        // Index of the next value in current
+        private int i;
+
+        // Bounds of the keys
+        private final double high;
+        private final boolean highInclusive;
+        private final double low;
+        private final boolean lowInclusive;
+
+        /**
+         * Descends to the last value in the range
+         */
+        DescendingIterator(double high, boolean highInclusive, double low,
+            boolean lowInclusive) {
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            if (Double.isNaN(low) || Double.isNaN(high) || low > high
+                || (low == high && !(lowInclusive && highInclusive))) {
+                return;// the range is empty
+            }
+            current = findLastLeaf(high, highInclusive);
+            i = (highInclusive ? upperBound(current.keys, current.count, high)
+                : lowerBound(current.keys, current.count, high)) - 1;
+            skipToValue();
+        }
+
+        /**
+         * Moves to the previous key that is below high and ends the walk once a key is past low
+         */
+        private void skipToValue() {
+            while (current != null) {
+                if (i < 0) {
+                    current = current.previous;
+                    i = current == null ? -1 : current.count - 1;
+                    continue;
+                }
+                double key = current.keys[i];
+                if (key < low || (key == low && !lowInclusive)) {
+                    current = null;
+                } else if (key > high || (key == high && !highInclusive)) {
+                    i--;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.PrimitiveIterator.OfInt#nextInt()
+         */
+        @Override
+        public int nextInt() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            int value = current.values[i--];
+            skipToValue();
+            return value;
+        }
+
+    } // End of class DescendingIterator
+
+    /**
+     * This abstract class represents any type of node in the tree This class is a super class of
+     * the LeafNode and InternalNode types.
+     */
+    private abstract class Node {
+
+        // Keys, only the first count are in use. One extra slot lets a node overflow before it
+        // splits
+        double[] keys;
+
+        // Values of the pairs in a leaf node, of the separators in an internal node. Pairs are
+        // ordered by key and then by value, so a separator needs both to split equal keys
+        int[] values;
+
+        // Number of keys in use
+        int count;
+
+        /**
+         * Package constructor
+         */
+        Node() {
+            keys = new double[branchingFactor];
+            values = new int[branchingFactor];
+        }
+
+        /**
+         * Inserts key and value in the appropriate leaf node below this node
+         *
+         * @param key
+         * @param value
+         * @return the new right sibling if this node split, otherwise null. The pair that moves
+         *         up to the parent is left in splitKey and splitValue
+         */
+        abstract Node insert(double key, int value);
+
+        /**
+         * Deletes one pair with the key and value from the leaf node below this node
+         *
+         * @param key
+         * @param value
+         * @return true if the pair was found. This node may be left with too few keys, its
+         *         parent rebalances it
+         */
+        abstract boolean delete(double key, int value);
+
+        /**
+         * Gets the first leaf key of the subtree
+         *
+         * @return key
+         */
+        abstract double getFirstLeafKey();
+
+        /**
+         * Gets the value paired with the first leaf key of the subtree
+         *
+         * @return value
+         */
+        abstract int getFirstLeafValue();
+
+        /**
+         * Checks if the node has fewer keys than a node that is at least half full
+         *
+         * @return true if the node needs a key from a sibling or to be merged with one
+         */
+        boolean isUnderflow() {
+            return count < (branchingFactor - 1) / 2;
+        }
+
+        public String toString() {
+            return Arrays.toString(Arrays.copyOf(keys, count));
+        }
+
+    } // End of abstract class Node
+
+    /**
+     * This class represents an internal node of the tree.
+     */
+    private class InternalNode extends Node {
+
+        // Children nodes, the first count + 1 are in use
+        Node[] children;
+
+        /**
+         * Package constructor
+         */
+        InternalNode() {
+            super();
+            children = new Node[branchingFactor + 1];
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#getFirstLeafKey()
+         */
+        double getFirstLeafKey() {
+            return children[0].getFirstLeafKey();
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#getFirstLeafValue()
+         */
+        int getFirstLeafValue() {
+            return children[0].getFirstLeafValue();
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#insert(double, int)
+         */
+        Node insert(double key, int value) {
+            int i = upperBound(keys, values, count, key, value);// the only child for the pair
+            Node right = children[i].insert(key, value);
+            if (right == null) {// the child did not split
+                return null;
+            }
+            // make room for the new separator and child after position i
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            System.arraycopy(children, i + 1, children, i + 2, count - i);
+            keys[i] = splitKey;
+            values[i] = splitValue;
+            children[i + 1] = right;
+            count++;
+            if (count < branchingFactor) {
+                return null;
+            }
+
+            // split, this node keeps the left half and the middle separator moves up
+            int middle = count / 2;
+            InternalNode sibling = new InternalNode();
+            sibling.count = count - middle - 1;
+            System.arraycopy(keys, middle + 1, sibling.keys, 0, sibling.count);
+            System.arraycopy(values, middle + 1, sibling.values, 0, sibling.count);
+            System.arraycopy(children, middle + 1, sibling.children, 0, sibling.count + 1);
+            Arrays.fill(children, middle + 1, count + 1, null);
+            splitKey = keys[middle];
+            splitValue = values[middle];
+            count = middle;
+            return sibling;
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#delete(double, int)
+         */
+        boolean delete(double key, int value) {
+            int i = upperBound(keys, values, count, key, value);
+            if (!children[i].delete(key, value)) {
+                return false;
+            }
+            if (children[i].isUnderflow()) {
+                rebalance(i);
+            }
+            return true;
+        }
+
+        /**
+         * Fixes a child that has too few keys by moving a pair from a sibling that can spare
+         * one, or else by merging it with a sibling
+         *
+         * @param i index of the child
+         */
+        private void rebalance(int i) {
+            int minimum = (branchingFactor - 1) / 2;
+            if (i > 0 && children[i - 1].count > minimum) {
+                moveRight(i - 1);
+            } else if (i < count && children[i + 1].count > minimum) {
+                moveLeft(i);
+            } else if (i > 0) {
+                merge(i - 1);
+            } else {
+                merge(i);
+            }
+        }
+
+        /**
+         * Moves the last pair of children[i] to the front of children[i + 1]. Leaves move the
+         * pair and take the new first pair of the right leaf as their separator, internal nodes
+         * rotate the pair through the separator.
+         *
+         * @param i index of the separator between the two children
+         */
+        private void moveRight(int i) {
+            Node left = children[i];
+            Node right = children[i + 1];
+            System.arraycopy(right.keys, 0, right.keys, 1, right.count);
+            System.arraycopy(right.values, 0, right.values, 1, right.count);
+            if (left instanceof DoubleBPTree.LeafNode) {
+                right.keys[0] = left.keys[left.count - 1];
+                right.values[0] = left.values[left.count - 1];
+            } else {
+                Node[] rightChildren = ((InternalNode) right).children;
+                Node[] leftChildren = ((InternalNode) left).children;
+                System.arraycopy(rightChildren, 0, rightChildren, 1, right.count + 1);
+                right.keys[0] = keys[i];
+                right.values[0] = values[i];
+                rightChildren[0] = leftChildren[left.count];
+                leftChildren[left.count] = null;
+            }
+            keys[i] = left.keys[left.count - 1];
+            values[i] = left.values[left.count - 1];
+            left.count--;
+            right.count++;
+        }
+
+        /**
+         * Moves the first pair of children[i + 1] to the end of children[i], the mirror of
+         * moveRight
+         *
+         * @param i index of the separator between the two children
+         */
+        private void moveLeft(int i) {
+            Node left = children[i];
+            Node right = children[i + 1];
+            if (left instanceof DoubleBPTree.LeafNode) {
+                left.keys[left.count] = right.keys[0];
+                left.values[left.count] = right.values[0];
+                keys[i] = right.keys[1];// the new first pair of the right leaf
+                values[i] = right.values[1];
+            } else {
+                Node[] rightChildren = ((InternalNode) right).children;
+                left.keys[left.count] = keys[i];
+                left.values[left.count] = values[i];
+                ((InternalNode) left).children[left.count + 1] = rightChildren[0];
+                keys[i] = right.keys[0];
+                values[i] = right.values[0];
+                System.arraycopy(rightChildren, 1, rightChildren, 0, right.count);
+                rightChildren[right.count] = null;
+            }
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            System.arraycopy(right.values, 1, right.values, 0, right.count - 1);
+            left.count++;
+            right.count--;
+        }
+
+        /**
+         * Merges children[i + 1] into children[i] and removes the separator between them
+         *
+         * @param i index of the separator between the two children
+         */
+        private void merge(int i) {
+            Node left = children[i];
+            Node right = children[i + 1];
+            if (left instanceof DoubleBPTree.LeafNode) {
+                LeafNode rightLeaf = (LeafNode) right;
+                ((LeafNode) left).next = rightLeaf.next;// unlink the right leaf
+                if (rightLeaf.next != null) {
+                    rightLeaf.next.previous = (LeafNode) left;
+                }
+            } else {// the separator comes down between the two halves
+                left.keys[left.count] = keys[i];
+                left.values[left.count] = values[i];
+                System.arraycopy(((InternalNode) right).children, 0,
+                    ((InternalNode) left).children, left.count + 1, right.count + 1);
+                left.count++;
+            }
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            System.arraycopy(right.values, 0, left.values, left.count, right.count);
+            left.count += right.count;
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            System.arraycopy(values, i + 1, values, i, count - i - 1);
+            System.arraycopy(children, i + 2, children, i + 1, count - i - 1);
+            children[count] = null;
+            count--;
+        }
+
+    } // End of class InternalNode
+
+
+    /**
+     * This class represents a leaf node of the tree.
+     */
+    private class LeafNode extends Node {
+
+        // Reference to the next leaf node
+        LeafNode next;
+
+        // Reference to the previous leaf node
+        LeafNode previous;
+
+        /**
+         * Package constructor
+         */
+        LeafNode() {
+            super();
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#getFirstLeafKey()
+         */
+        double getFirstLeafKey() {
+            return keys[0];
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#getFirstLeafValue()
+         */
+        int getFirstLeafValue() {
+            return values[0];
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#insert(double, int)
+         */
+        Node insert(double key, int value) {
+            int i = upperBound(keys, values, count, key, value);// after any equal pairs
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            keys[i] = key;
+            values[i] = value;
+            count++;
+            if (count < branchingFactor) {
+                return null;
+            }
+
+            // split, this node keeps the left half and the new sibling is linked in after it
+            int half = count / 2;
+            LeafNode sibling = new LeafNode();
+            sibling.count = count - half;
+            System.arraycopy(keys, half, sibling.keys, 0, sibling.count);
+            System.arraycopy(values, half, sibling.values, 0, sibling.count);
+            count = half;
+            sibling.next = next;
+            if (next != null) {
+                next.previous = sibling;
+            }
+            sibling.previous = this;
+            next = sibling;
+            splitKey = sibling.keys[0];
+            splitValue = sibling.values[0];
+            return sibling;
+        }
+
+        /**
+         * (non-Javadoc)
+         *
+         * @see DoubleBPTree.Node#delete(double, int)
+         */
+        boolean delete(double key, int value) {
+            int i = upperBound(keys, values, count, key, value) - 1;// the last equal pair
+            if (i < 0 || keys[i] != key || values[i] != value) {
+                return false;
+            }
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            System.arraycopy(values, i + 1, values, i, count - i - 1);
+            count--;
+            return true;
+        }
+
+    } // End of class LeafNode
+
+} // End of class DoubleBPTree
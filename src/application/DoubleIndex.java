@@ -0,0 +1,162 @@
+package application;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * An index from double keys to int values, the operations FoodData needs from a nutrient index.
+ * DoubleBPTree keeps the whole index on the heap and DiskBPTree keeps it in pages of a file, so
+ * FoodData can serve the same queries from either one.
+ *
+ * Only insert, delete, bulkLoadSorted, size and the two iterators have to be implemented, the
+ * other searches are built on the iterators.
+ *
+ * @author Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ */
+public interface DoubleIndex extends BPTreeADT<Double, Integer> {
+
+    /**
+     * Gets the number of key-value pairs in the index
+     *
+     * @return size of the index
+     */
+    public int size();
+
+    /**
+     * Inserts the key and value. Duplicate keys are allowed.
+     *
+     * @param key key, must not be NaN
+     * @param value value
+     * @throws IllegalArgumentException if the key is NaN
+     */
+    public void insert(double key, int value);
+
+    /**
+     * Deletes one pair with the key and value in O(log n), rebalancing the index so its nodes
+     * stay at least half full
+     *
+     * @param key key of the pair
+     * @param value value of the pair
+     * @return true if the pair was found and deleted, false if it is not in the index
+     */
+    public boolean delete(double key, int value);
+
+    /**
+     * Builds the index from key-value pairs that are already in ascending order of key and then
+     * value, the order DoubleBPTree.sortByKey puts them in
+     *
+     * @param keys keys to load in ascending order, none may be NaN
+     * @param values values to load, values[i] is paired with keys[i] and equal keys have
+     *        ascending values
+     * @throws IllegalArgumentException if the arrays are null, of different lengths, a key is NaN
+     *         or the pairs are not sorted
+     * @throws IllegalStateException if the index is not empty
+     */
+    public void bulkLoadSorted(double[] keys, int[] values);
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high
+     *
+     * Note: the index must not be changed while the iterator is in use.
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @return iterator over the values in ascending key order
+     */
+    public PrimitiveIterator.OfInt rangeIterator(double low, boolean lowInclusive, double high,
+        boolean highInclusive);
+
+    /**
+     * Gets a lazy iterator over the values whose keys are between low and high, from the largest
+     * key down to the smallest
+     *
+     * Note: the index must not be changed while the iterator is in use.
+     *
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @return iterator over the values in descending key order
+     */
+    public PrimitiveIterator.OfInt descendingIterator(double high, boolean highInclusive,
+        double low, boolean lowInclusive);
+
+    /**
+     * Gets the values that satisfy the given range search arguments, without boxing. Value of
+     * comparator can be one of these: "<=", "==", ">=". Values are returned in ascending key
+     * order.
+     *
+     * @param key to be searched
+     * @param comparator is a string
+     * @return array of values, empty if nothing was found or the comparator is not valid
+     */
+    public default int[] rangeSearchValues(double key, String comparator) {
+        if (comparator == null) {
+            return new int[0];
+        } else if (comparator.equals(">=")) {
+            return rangeSearchValues(key, true, Double.POSITIVE_INFINITY, true);
+        } else if (comparator.equals("==")) {
+            return rangeSearchValues(key, true, key, true);
+        } else if (comparator.equals("<=")) {
+            return rangeSearchValues(Double.NEGATIVE_INFINITY, true, key, true);
+        }
+        return new int[0];
+    }
+
+    /**
+     * Gets the values whose keys are between low and high
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @return array of values in ascending key order, empty if nothing was found
+     */
+    public default int[] rangeSearchValues(double low, boolean lowInclusive, double high,
+        boolean highInclusive) {
+        int[] found = new int[16];
+        int count = 0;
+        PrimitiveIterator.OfInt values = rangeIterator(low, lowInclusive, high, highInclusive);
+        while (values.hasNext()) {
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = values.nextInt();
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Passes the values whose keys are between low and high to the visitor in ascending key
+     * order, without building an array
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @param visitor receives each value
+     */
+    public default void forEachInRange(double low, boolean lowInclusive, double high,
+        boolean highInclusive, IntConsumer visitor) {
+        rangeIterator(low, lowInclusive, high, highInclusive).forEachRemaining(visitor);
+    }
+
+    /**
+     * Gets the values whose keys are between low and high as a compressed bitmap, so the
+     * results of several searches can be combined with bitmap operations
+     *
+     * @param low lower bound of the keys
+     * @param lowInclusive if keys equal to low are included
+     * @param high upper bound of the keys
+     * @param highInclusive if keys equal to high are included
+     * @return bitmap of the values
+     */
+    public default CompressedBitmap rangeSearchBitmap(double low, boolean lowInclusive,
+        double high, boolean highInclusive) {
+        return CompressedBitmap.of(rangeSearchValues(low, lowInclusive, high, highInclusive));
+    }
+
+}
@@ -1,16 +1,33 @@
 package application;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoublePredicate;
+import java.util.stream.IntStream;
 
 /**
  * Filename: FoodData.java
@@ -25,146 +42,1315 @@ import java.util.stream.Stream;
  * 
  * Additional credits: none 
  *
- * Bugs or other notes: No known bugs
+ * Bugs or other notes: A food item returned by a query can still be changed by updateNutrient
+ * while the caller reads it
  *
  * This class represents the backend for managing all the operations associated with FoodItems
  * 
+ * It is safe to use from many threads. Queries hold a read lock, so any number of them run at
+ * once. Changes are made one at a time, and hold the write lock only while they change what
+ * queries read: loadFoodItems builds the new food items and their indexes without it and then
+ * swaps them in, so queries keep running on the old food items during a load.
+ * 
  */
 public class FoodData implements FoodDataADT<FoodItem> {
 
+    // Held by queries to read, and by changes to the food items or indexes to write. Changes
+    // are also synchronized on this object, so only one runs at a time
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
     // List of all the food items.
     private List<FoodItem> foodItemList;
 
+    // List of all the food items in the order they were added, a food item's ordinal is its
+    // position in this list
+    private List<FoodItem> foodItemsByOrdinal;
+
+    // Nutrient values of the food items as one column per nutrient, row i belongs to the food
+    // item with ordinal i. The food items read their values here.
+    private NutrientColumns nutrientColumns;
+
+    // Map of ids and their food items, built the first time a food item is looked up by id and
+    // null until then
+    private HashMap<String, FoodItem> foodItemsById;
+
+    // Trigram index of the lower case names, by ordinal
+    private NameIndex nameIndex;
+
+    // Food items sorted by lower case name, for name prefixes
+    private PrefixIndex prefixIndex;
+
+    // Recent results of filterByNutrients and filterByName, by normalized query
+    private QueryCache queryCache;
+
     // Map of nutrients and their corresponding index
-    // THe BPTree uses value of the nutrient as key, and the associated foodItem as
-    // value
-    private HashMap<String, BPTree<Double, FoodItem>> indexes;
+    // THe DoubleIndex uses value of the nutrient as key, and the ordinal of the associated
+    // foodItem as value
+    private HashMap<String, DoubleIndex> indexes;
+
+    // Map of nutrients and the statistics of their index, used to plan queries
+    private HashMap<String, IndexStatistics> statistics;
+
+    // The nutrients every food item has, in file order
+    static final String[] NUTRIENTS = {"calories", "fat", "carbohydrate", "fiber", "protein"};
+
+    // Branching factor used for an index unless one is set for its nutrient. Picked from the
+    // BPTreeBenchmark sweep: at 1M rows 64 keeps the trees 4 levels deep, inserts and range
+    // searches are several times faster than at 3 and wider nodes stop paying off
+    static final int DEFAULT_BRANCHING_FACTOR = 64;
+
+    // addFoodItems bulk loads the indexes again instead of inserting when the batch is at least
+    // 1 / REBUILD_FRACTION of all the food items
+    private static final int REBUILD_FRACTION = 8;
+
+    // The statistics are built again once the food items have grown by a quarter, 5 / 4
+    private static final int STALE_STATISTICS_GROWTH = 5;
+
+    // Default bounds of the query cache: number of results, and food items in all of them
+    private static final int QUERY_CACHE_ENTRIES = 256;
+    private static final long QUERY_CACHE_FOOD_ITEMS = 1 << 20;
+
+    // Orders food items by name, the order of foodItemList
+    private static final Comparator<FoodItem> NAME_ORDER =
+        (FoodItem food1, FoodItem food2) -> food1.getName().compareTo(food2.getName());
+
+    // Branching factor of each nutrient's index, used the next time the indexes are built
+    private HashMap<String, Integer> branchingFactors;
+
+    // Problems found by the last loadFoodItems, one message per malformed line
+    private List<String> loadErrors;
+
+    // Directory the indexes are kept in as DiskBPTree files, null to keep them on the heap
+    private String indexDirectory;
+
+    // Page cache budget of each on-disk index in bytes
+    private long indexCacheBytes;
+
+    // File the food items were last loaded from, the write-ahead log is kept next to it
+    private String basePath;
+
+    // Write-ahead log of the changes made since the base file was written, null if there is
+    // none
+    private FoodItemLog log;
+
+    // Number of added food items committed to the log with one write
+    private int logGroupSize;
+
+    // When the log is forced to the disk, null if changes are not logged
+    private SyncPolicy logSyncPolicy;
+
+    /**
+     * When the write-ahead log forces committed food items to the disk
+     */
+    public enum SyncPolicy {
+        // Force after every committed group, a committed food item survives a power failure
+        ALWAYS,
+        // Leave it to the operating system, a committed food item survives the program crashing
+        // and the log is only forced by checkpoint and when it is closed
+        NEVER
+    }
 
     /**
      * Public constructor
      */
     public FoodData() {
+        this(DEFAULT_BRANCHING_FACTOR);
+    }
+
+    /**
+     * Constructor that sets the branching factor of every nutrient index
+     * 
+     * @param branchingFactor branching factor of the BPTree indexes, must be greater than 2
+     */
+    public FoodData(int branchingFactor) {
         foodItemList = new ArrayList<FoodItem>();
-        indexes = new HashMap<String, BPTree<Double, FoodItem>>();
+        foodItemsByOrdinal = new ArrayList<FoodItem>();
+        nutrientColumns = new NutrientColumns();
+        indexes = new HashMap<String, DoubleIndex>();
+        statistics = new HashMap<String, IndexStatistics>();
+        branchingFactors = new HashMap<String, Integer>();
+        loadErrors = new ArrayList<String>();
+        nameIndex = new NameIndex(foodItemsByOrdinal);
+        prefixIndex = new PrefixIndex(foodItemsByOrdinal, nameIndex);
+        queryCache = new QueryCache(QUERY_CACHE_ENTRIES, QUERY_CACHE_FOOD_ITEMS);
+        for (String nutrient : NUTRIENTS) {
+            setBranchingFactor(nutrient, branchingFactor);
+            indexes.put(nutrient, new DoubleBPTree(branchingFactor)); // Empty until a load
+            statistics.put(nutrient, new IndexStatistics(new double[0]));
+        }
     }
 
+
+    /**
+     * Sets the branching factor of one nutrient's index. It takes effect the next time the
+     * indexes are built by loadFoodItems.
+     * 
+     * @param nutrient name of the nutrient [CASE-INSENSITIVE]
+     * @param branchingFactor branching factor of the index, must be greater than 2
+     * @throws IllegalArgumentException if the nutrient is unknown or the branching factor is
+     *         too small
+     */
+    public synchronized void setBranchingFactor(String nutrient, int branchingFactor) {
+        if (branchingFactor <= 2) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        branchingFactors.put(nutrientName(nutrient), branchingFactor);
+    } // End setBranchingFactor()
+
+
+    /**
+     * Gets the branching factor of one nutrient's index
+     * 
+     * @param nutrient name of the nutrient [CASE-INSENSITIVE]
+     * @return the branching factor used when the index is built
+     * @throws IllegalArgumentException if the nutrient is unknown
+     */
+    public synchronized int getBranchingFactor(String nutrient) {
+        return branchingFactors.get(nutrientName(nutrient));
+    } // End getBranchingFactor()
+
+
+    /*
+     * Helper method to normalize a nutrient name, nutrients are case-insensitive
+     * 
+     * @param nutrient name of the nutrient
+     * @return the lower case name
+     * @throws IllegalArgumentException if it is not one of the known nutrients
+     */
+    static String nutrientName(String nutrient) {
+        String name = nutrient == null ? null : nutrient.trim().toLowerCase();
+        for (String known : NUTRIENTS) {
+            if (known.equals(name)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("Unknown nutrient: " + nutrient);
+    } // End nutrientName()
+
     /* (non-Javadoc)
      * @see FoodDataADT#loadFoodItems(java.lang.String)
      */
     @Override
     public void loadFoodItems(String filePath) {
+        loadFoodItems(filePath, parsed -> true);
+    } // End loadFoodItems()
+
+
+    /**
+     * Loads the food items of a file, the same as loadFoodItems(String), reports how much of
+     * the file is parsed as it goes and can be stopped while it is parsed. Building the indexes
+     * afterwards is not reported and can not be stopped.
+     *
+     * @param filePath path of the food item file
+     * @param progress receives the share of the file parsed so far, from 0 to 1, on the
+     *        threads doing the parsing, and returns false to stop loading. The food items that
+     *        were already loaded are kept then, and getLoadErrors() says it was stopped.
+     */
+    public synchronized void loadFoodItems(String filePath, DoublePredicate progress) {
+        FoodItemLoader.Loaded loaded;
+        try {
+            if (FoodDataSnapshot.isSnapshot(filePath)) {
+                // A snapshot is already columnar and sorted, it only needs to be copied in
+                loaded = FoodDataSnapshot.read(filePath);
+                if (!progress.test(1)) {
+                    throw new CancellationException("Stopped reading " + filePath);
+                }
+            } else {
+                // Map the file and parse it in chunks on every core, the food items come back
+                // in file order already numbered with their ordinals
+                loaded = FoodItemLoader.load(filePath, progress);
+            }
+        } catch (IOException e) {
+            keepFoodItems("Could not read " + filePath + ": " + e.getMessage());
+            return;
+        } catch (CancellationException e) {
+            keepFoodItems(e.getMessage());
+            return;
+        }
 
-        // Initialize a BPTree with a branching factor of 3 for each nutrient
-        BPTree<Double, FoodItem> calories = new BPTree<Double, FoodItem>(3);
-        BPTree<Double, FoodItem> fat = new BPTree<Double, FoodItem>(3);
-        BPTree<Double, FoodItem> carbohydrate = new BPTree<Double, FoodItem>(3);
-        BPTree<Double, FoodItem> fiber = new BPTree<Double, FoodItem>(3);
-        BPTree<Double, FoodItem> protein = new BPTree<Double, FoodItem>(3);
-
-        try (Stream<String> wordStream = Files.lines(Paths.get(filePath))) { // Try with resources to open wordstream
-
-            // Assign wordStream to foodItemList, filter empty lines, and map each line to a
-            // FoodItem
-            foodItemList = wordStream.filter(line -> line != null && line != "" && !line.startsWith(",")).map(line -> {
-                String[] str = line.split(","); // Split each line into a String Array by commas
-
-                String id = str[0]; // First element of the array is the FoodItem id
-                String name = str[1]; // Second element is the name of the FoodItem
-
-                // Assign appropriate elements of str array to corresponding nutrient variable
-                Double cal_count = Double.valueOf(str[3]);
-                Double fat_grams = Double.valueOf(str[5]);
-                Double carb_grams = Double.valueOf(str[7]);
-                Double fiber_grams = Double.valueOf(str[9]);
-                Double protein_grams = Double.valueOf(str[11]);
-
-                // Create a new FoodItem, with ID and name from above
-                FoodItem newFood = new FoodItem(id, name);
-
-                // Add each nutrient to the new FoodItem
-                newFood.addNutrient("calories", cal_count);
-                newFood.addNutrient("fat", fat_grams);
-                newFood.addNutrient("carbohydrate", carb_grams);
-                newFood.addNutrient("fiber", fiber_grams);
-                newFood.addNutrient("protein", protein_grams);
-
-                // Add the nutrient values and the new FoodItem to the corresponding BPTree
-                calories.insert(cal_count, newFood);
-                fat.insert(fat_grams, newFood);
-                carbohydrate.insert(carb_grams, newFood);
-                fiber.insert(fiber_grams, newFood);
-                protein.insert(protein_grams, newFood);
-
-                // Return the new FoodItem to foodItemList
-                return newFood;
-
-            }).collect(Collectors.toList()); // Add each line to foodItemList as a FoodItem
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Sort foodItemList by name in ascending order
-        Collections.sort(foodItemList, (FoodItem food1, FoodItem food2) -> food1.getName().compareTo(food2.getName()));
-
-        // Put each BPTree in the indexes HashMap
-        indexes.put("calories", calories);
-        indexes.put("fat", fat);
-        indexes.put("carbohydrate", carbohydrate);
-        indexes.put("fiber", fiber);
-        indexes.put("protein", protein);
+        // Malformed lines are skipped, report them instead of giving up on the whole file
+        for (String error : loaded.errors) {
+            System.err.println(filePath + ": " + error);
+        }
+
+        // Replay the food items added since the file was last written
+        closeLog();
+        basePath = filePath;
+        if (logSyncPolicy != null) {
+            loaded = replayLog(loaded);
+        }
+
+        // Everything below is built without the lock, queries keep using the old food items
+        NameIndex newNameIndex = new NameIndex(loaded.foodItems); // Lower case each name once
+
+        // Bulk load a BPTree for each nutrient from its column, one nutrient per core. Loading
+        // the whole column at once is much cheaper than inserting (and splitting) one row at a time
+        DoubleIndex[] built = new DoubleIndex[NUTRIENTS.length];
+        IndexStatistics[] stats = new IndexStatistics[NUTRIENTS.length];
+        buildAllIndexes(loaded, built, stats);
+
+        // Sort foodItemList by name in ascending order, unless the order was loaded
+        FoodItem[] byName = new FoodItem[loaded.foodItems.size()];
+        if (loaded.nameOrder != null) {
+            for (int i = 0; i < byName.length; i++) {
+                byName[i] = loaded.foodItems.get(loaded.nameOrder[i]);
+            }
+        } else {
+            byName = loaded.foodItems.toArray(byName);
+            Arrays.parallelSort(byName, NAME_ORDER);
+        }
+        List<FoodItem> newFoodItemList = new ArrayList<FoodItem>(Arrays.asList(byName));
+        // Names sorted with case are nearly sorted ignoring case, which makes this sort cheap
+        PrefixIndex newPrefixIndex = new PrefixIndex(newFoodItemList, newNameIndex);
+
+        // Swap everything in at once, queries see either the old or the new food items
+        DoubleIndex[] replaced;
+        lock.writeLock().lock();
+        try {
+            foodItemsByOrdinal = loaded.foodItems;
+            nutrientColumns = loaded.columns; // The old food items keep reading the old columns
+            foodItemList = newFoodItemList;
+            foodItemsById = null;
+            nameIndex = newNameIndex;
+            prefixIndex = newPrefixIndex;
+            loadErrors = loaded.errors;
+            replaced = installIndexes(built, stats);
+            queryCache.clear(); // Every cached result is of the old food items
+        } finally {
+            lock.writeLock().unlock();
+        }
+        replaceIndexes(replaced, built); // No query can be reading the old indexes any more
     } // End loadFoodItems()
 
+
+    /*
+     * Helper method to report a file that was not loaded, the food items that were already
+     * loaded are kept
+     *
+     * @param error why the file was not loaded
+     */
+    private void keepFoodItems(String error) {
+        List<String> errors = new ArrayList<String>();
+        errors.add(error);
+        System.err.println(error);
+        lock.writeLock().lock();
+        try {
+            loadErrors = errors;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    } // End keepFoodItems()
+
+
+    /**
+     * Gets the problems found by the last loadFoodItems. Each malformed line of the file is
+     * skipped and reported with its line number, and a file that could not be read or a load
+     * that was stopped is reported on its own.
+     * 
+     * @return list of messages, empty if the last load had no problems
+     */
+    public List<String> getLoadErrors() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<String>(loadErrors);
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End getLoadErrors()
+
+
+    /*
+     * Helper method to bulk load a new index and its statistics for every nutrient from columns.
+     * If the on-disk indexes can not be built, the problem is added to the errors of the columns
+     * and the indexes are built on the heap instead.
+     * 
+     * @param loaded the columns, and their sorted order if it was loaded too
+     * @param built receives the index of each nutrient
+     * @param stats receives the statistics of each index
+     */
+    private void buildAllIndexes(FoodItemLoader.Loaded loaded, DoubleIndex[] built,
+        IndexStatistics[] stats) {
+        try {
+            buildIndexes(loaded, built, stats);
+        } catch (UncheckedIOException e) {
+            loaded.errors.add("Could not build the indexes in " + indexDirectory + ": "
+                + e.getCause().getMessage());
+            System.err.println(loaded.errors.get(loaded.errors.size() - 1));
+            closeIndexes(built);
+            indexDirectory = null; // Fall back to indexes on the heap
+            buildIndexes(loaded, built, stats);
+        }
+    } // End buildAllIndexes()
+
+
+    /*
+     * Helper method to replace every index and its statistics, with the write lock held. The
+     * caller closes the old indexes once no query can be reading them.
+     * 
+     * @param built the new index of each nutrient
+     * @param stats the statistics of each new index
+     * @return the old indexes
+     */
+    private DoubleIndex[] installIndexes(DoubleIndex[] built, IndexStatistics[] stats) {
+        DoubleIndex[] replaced = new DoubleIndex[NUTRIENTS.length];
+        for (int n = 0; n < NUTRIENTS.length; n++) {
+            replaced[n] = indexes.put(NUTRIENTS[n], built[n]);
+            statistics.put(NUTRIENTS[n], stats[n]);
+        }
+        return replaced;
+    } // End installIndexes()
+
+
+    /*
+     * Helper method to bulk load the index of every nutrient from the loaded columns, one
+     * nutrient per core
+     * 
+     * @param loaded the columns, and their sorted order if it was loaded too
+     * @param built receives the index of each nutrient
+     * @param stats receives the statistics of each index
+     * @throws UncheckedIOException if an on-disk index can not be built
+     */
+    private void buildIndexes(FoodItemLoader.Loaded loaded, DoubleIndex[] built,
+        IndexStatistics[] stats) {
+        IntStream.range(0, NUTRIENTS.length).parallel().forEach(n -> {
+            double[] keys;
+            int[] ordinals;
+            if (loaded.sortedOrdinals == null) { // Sort the column, carrying the ordinals along
+                keys = loaded.columns.copy(n);
+                ordinals = new int[keys.length];
+                for (int i = 0; i < ordinals.length; i++) {
+                    ordinals[i] = i;
+                }
+                DoubleBPTree.sortByKey(keys, ordinals);
+            } else { // The order was loaded, only the keys have to be put in it
+                ordinals = loaded.sortedOrdinals[n];
+                double[] column = loaded.columns.values(n);
+                keys = new double[ordinals.length];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = column[ordinals[i]];
+                }
+            }
+            built[n] = newIndex(NUTRIENTS[n]);
+            built[n].bulkLoadSorted(keys, ordinals);
+            stats[n] = new IndexStatistics(keys);
+        });
+    } // End buildIndexes()
+
+
+    /**
+     * Logs every food item added by addFoodItem or addFoodItems, removed by removeFoodItem and
+     * changed by updateNutrient to a write-ahead log next to the loaded file, so the change
+     * persists without rewriting the file. The log is named after the file with ".log" added
+     * and is replayed on top of the file by every loadFoodItems; checkpoint folds it back into
+     * the file. It takes effect the next time loadFoodItems is called.
+     * 
+     * @param groupSize number of changes committed with one write, 1 to commit each one as it
+     *        is made. Use flushLog to commit a partial group
+     * @param syncPolicy when committed changes are forced to the disk, null to stop logging
+     * @throws IllegalArgumentException if groupSize is not positive
+     */
+    public synchronized void setWriteAheadLog(int groupSize, SyncPolicy syncPolicy) {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("Illegal group size: " + groupSize);
+        }
+        logGroupSize = groupSize;
+        logSyncPolicy = syncPolicy;
+    } // End setWriteAheadLog()
+
+
+    /**
+     * Commits the changes waiting for their group to fill to the write-ahead log
+     */
+    public synchronized void flushLog() {
+        if (log != null) {
+            try {
+                log.commit();
+            } catch (IOException e) {
+                System.err.println("Could not write the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+        }
+    } // End flushLog()
+
+
+    /**
+     * Folds the write-ahead log back into the loaded file: the file is rewritten with every food
+     * item, in the same format it was loaded in, and the log is emptied. The file is replaced
+     * atomically, and the changes in the log are replayed by id so one already in the file changes
+     * nothing, so a crash at any point loses nothing and duplicates nothing.
+     */
+    public synchronized void checkpoint() {
+        if (basePath == null) {
+            return; // Nothing was loaded
+        }
+        lock.readLock().lock(); // Queries can go on while the file is written
+        try {
+            if (log != null) {
+                log.commit();
+            }
+            Path base = Paths.get(basePath);
+            Path temporary = Paths.get(basePath + ".tmp");
+            if (FoodDataSnapshot.isSnapshot(basePath)) {
+                FoodDataSnapshot.write(temporary.toString(), foodItemsByOrdinal, foodItemList,
+                    nutrientColumns);
+            } else {
+                writeCSV(temporary.toString(), true);
+            }
+            Files.move(temporary, base, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            if (log != null) {
+                log.reset();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not checkpoint " + basePath + ": " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End checkpoint()
+
+
+    /*
+     * Helper method to open the write-ahead log of the loaded file and apply the changes in it
+     * that are not in the file yet
+     * 
+     * @param loaded the food items of the file
+     * @return the food items of the file with the changes from the log, added food items at the
+     *         end
+     */
+    private FoodItemLoader.Loaded replayLog(FoodItemLoader.Loaded loaded) {
+        try {
+            log = new FoodItemLog(basePath + ".log", logGroupSize, logSyncPolicy);
+        } catch (IOException e) {
+            loaded.errors.add("Could not open the log of " + basePath + ": " + e.getMessage());
+            System.err.println(loaded.errors.get(loaded.errors.size() - 1));
+            return loaded;
+        }
+        for (String error : log.getErrors()) { // Skipped records, the rest are replayed
+            loaded.errors.add(basePath + ".log: " + error);
+            System.err.println(loaded.errors.get(loaded.errors.size() - 1));
+        }
+        if (log.getRecovered().isEmpty()) {
+            return loaded;
+        }
+        // A crash between a checkpoint replacing the file and emptying the log leaves changes in
+        // both. Replaying a change by id a second time changes nothing: an add whose id is
+        // already there is skipped, a remove or update of a missing id is ignored
+        HashMap<String, FoodItem> byId = new HashMap<String, FoodItem>(loaded.foodItems.size() * 2);
+        for (FoodItem food : loaded.foodItems) {
+            byId.put(food.getID(), food);
+        }
+        List<FoodItem> added = new ArrayList<FoodItem>();
+        Set<FoodItem> removed = Collections.newSetFromMap(new IdentityHashMap<FoodItem, Boolean>());
+        for (FoodItemLog.Record record : log.getRecovered()) {
+            if (record.kind == FoodItemLog.Record.ADD) {
+                if (!byId.containsKey(record.food.getID())) {
+                    byId.put(record.food.getID(), record.food);
+                    added.add(record.food);
+                }
+            } else if (record.kind == FoodItemLog.Record.REMOVE) {
+                FoodItem food = byId.remove(record.id);
+                if (food != null) {
+                    removed.add(food);
+                }
+            } else { // An update
+                FoodItem food = byId.get(record.id);
+                if (food != null) {
+                    food.addNutrient(record.nutrient, record.value);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            loaded = loaded.withoutRows(removed);
+            added.removeIf(removed::contains);
+        }
+        return loaded.withRows(added); // Also drops the loaded orders, values may have changed
+    } // End replayLog()
+
+
+    /*
+     * Helper method to close the write-ahead log, committing what is waiting
+     */
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+            log = null;
+        }
+    } // End closeLog()
+
+
+    /**
+     * Keeps the nutrient indexes in files instead of on the heap, so range queries can be served
+     * over more data than fits in memory. Each index is a DiskBPTree named after its nutrient in
+     * the directory, and only cacheBytes of its pages are kept on the heap. It takes effect the
+     * next time the indexes are built by loadFoodItems; the branching factors are not used by
+     * on-disk indexes, their nodes fill a page instead.
+     * 
+     * @param directory existing directory for the index files, null to keep the indexes on the
+     *        heap again
+     * @param cacheBytes most bytes of pages each index keeps on the heap
+     */
+    public synchronized void setIndexDirectory(String directory, long cacheBytes) {
+        indexDirectory = directory;
+        indexCacheBytes = cacheBytes;
+    } // End setIndexDirectory()
+
+
+    /**
+     * Sets the bounds of the cache of filterByNutrients and filterByName results. The least
+     * recently used results are dropped to stay within both bounds.
+     * 
+     * @param maxEntries most results kept, 0 turns the cache off
+     * @param maxFoodItems most food items kept in all the results together
+     * @throws IllegalArgumentException if a bound is negative
+     */
+    public void setQueryCache(int maxEntries, long maxFoodItems) {
+        queryCache.setLimits(maxEntries, maxFoodItems);
+    } // End setQueryCache()
+
+
+    /**
+     * Gets the number of filterByNutrients and filterByName calls answered from the cache
+     * 
+     * @return number of cache hits
+     */
+    public long getQueryCacheHits() {
+        return queryCache.hits();
+    } // End getQueryCacheHits()
+
+
+    /**
+     * Gets the number of filterByNutrients and filterByName calls that had to search
+     * 
+     * @return number of cache misses
+     */
+    public long getQueryCacheMisses() {
+        return queryCache.misses();
+    } // End getQueryCacheMisses()
+
+
+    /*
+     * Helper method to make an empty index for one nutrient, on the heap or in a new file
+     * depending on setIndexDirectory
+     * 
+     * @param nutrient the nutrient to index
+     * @return an empty index
+     * @throws UncheckedIOException if the index file can not be made
+     */
+    private DoubleIndex newIndex(String nutrient) {
+        if (indexDirectory == null) {
+            return new DoubleBPTree(branchingFactors.get(nutrient));
+        }
+        try {
+            // The old index can still be open for queries, so the new one is built in a
+            // temporary file and moved over the old file once the old index is closed
+            Path temporary = indexFile(nutrient, ".idx.tmp");
+            Files.deleteIfExists(temporary); // Left by a build that did not finish
+            return new DiskBPTree(temporary.toString(), DiskBPTree.DEFAULT_PAGE_SIZE,
+                indexCacheBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    } // End newIndex()
+
+
+    /*
+     * Helper method to get the path of a file of a nutrient's index
+     * 
+     * @param nutrient the nutrient
+     * @param suffix ".idx" for the index, ".idx.tmp" while it is being built
+     * @return the path in the index directory
+     */
+    private Path indexFile(String nutrient, String suffix) {
+        return Paths.get(indexDirectory, nutrient + suffix);
+    } // End indexFile()
+
+
+    /*
+     * Helper method to close the indexes that were replaced and move the files of the new ones
+     * over theirs. A file is only replaced once nothing has it open, which Windows needs, and
+     * the move is atomic, the same as checkpoint replacing the loaded file.
+     * 
+     * @param replaced the old indexes, null entries are skipped
+     * @param built the new indexes, those kept in files are still in their temporary files
+     */
+    private void replaceIndexes(DoubleIndex[] replaced, DoubleIndex[] built) {
+        closeIndexes(replaced);
+        for (int n = 0; n < NUTRIENTS.length; n++) {
+            if (built[n] instanceof DiskBPTree) {
+                try { // The new index stays open, it keeps using the file under its new name
+                    Files.move(indexFile(NUTRIENTS[n], ".idx.tmp"), indexFile(NUTRIENTS[n], ".idx"),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("Could not replace the index file of " + NUTRIENTS[n]
+                        + ": " + e.getMessage());
+                }
+            }
+        }
+    } // End replaceIndexes()
+
+
+    /*
+     * Helper method to close the indexes of an array that are kept in files
+     * 
+     * @param toClose the indexes, null entries are skipped
+     */
+    private void closeIndexes(DoubleIndex[] toClose) {
+        for (DoubleIndex index : toClose) {
+            if (index instanceof Closeable) {
+                try {
+                    ((Closeable) index).close();
+                } catch (IOException e) {
+                    System.err.println("Could not close an index: " + e.getMessage());
+                }
+            }
+        }
+    } // End closeIndexes()
+
+
     
     /* (non-Javadoc)
      * @see FoodDataADT#filterByName(java.lang.String)
      */
     @Override
     public List<FoodItem> filterByName(String substring) {
+        lock.readLock().lock();
+        try {
+            String lowerCase = substring.toLowerCase();
+            String key = QueryCache.nameKey(lowerCase);
+            List<FoodItem> finalList = queryCache.get(key);
+            if (finalList != null) {
+                return finalList;
+            }
+            if (lowerCase.length() < NameIndex.GRAM) { // Too short for trigrams, scan the names
+                finalList = scanNames(lowerCase, 0, Integer.MAX_VALUE);
+            } else { // Only the food items holding every trigram of the substring are checked
+                finalList = byName(nameIndex.search(lowerCase));
+            }
+            queryCache.putNameQuery(key, lowerCase, finalList);
+            return finalList;
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End filterByName()
+    
+
+    /**
+     * Gets one page of the food items that have name containing the substring
+     * 
+     * @param substring substring to be searched [CASE-INSENSITIVE]
+     * @param offset number of matching food items to skip
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items, in name order
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public List<FoodItem> filterByName(String substring, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            checkPage(offset, limit);
+            String lowerCase = substring.toLowerCase();
+            if (lowerCase.length() < NameIndex.GRAM) { // The scan stops as soon as the page is full
+                return scanNames(lowerCase, offset, limit);
+            }
+            CompressedBitmap candidates = nameIndex.candidates(lowerCase);
+            long wanted = (long) offset + limit;
+            if (wanted * foodItemList.size() < (long) candidates.cardinality()
+                * candidates.cardinality()) {
+                // Many candidates: walking foodItemList reaches the end of the page after about
+                // wanted * size / candidates food items, less than sorting every candidate
+                return scanNames(lowerCase, candidates, offset, limit);
+            }
+            List<FoodItem> matches = byName(nameIndex.search(lowerCase));
+            int from = Math.min(offset, matches.size());
+            int to = (int) Math.min((long) from + limit, matches.size());
+            return new ArrayList<FoodItem>(matches.subList(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End filterByName()
 
-        // Create finalList of FoodItems
-        ArrayList<FoodItem> finalList = new ArrayList<FoodItem>();
 
-        // Iterate through each item in foodItem List
+    /**
+     * Gets the first food items whose name starts with a prefix, e.g. to suggest names while
+     * the user is typing. Only the matches returned are read, so it takes a few microseconds
+     * however many food items are loaded or match.
+     * 
+     * @param prefix prefix of the names [CASE-INSENSITIVE]
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items, sorted by name ignoring case
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<FoodItem> completeName(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            checkPage(0, limit);
+            return prefixIndex.complete(prefix.toLowerCase(), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End completeName()
+
+
+    /*
+     * Helper method to scan foodItemList for names containing a substring, using the lower case
+     * names kept by the name index instead of lower casing every name again
+     * 
+     * @param lowerCase substring in lower case
+     * @param offset number of matching food items to skip
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items, in name order
+     */
+    private List<FoodItem> scanNames(String lowerCase, int offset, int limit) {
+        return scanNames(lowerCase, null, offset, limit);
+    } // End scanNames()
+
+
+    /*
+     * Helper method to scan foodItemList for names containing a substring, only reading the
+     * names of the candidates found by the name index
+     * 
+     * @param lowerCase substring in lower case
+     * @param candidates ordinals of the only food items that can match, null for every one
+     * @param offset number of matching food items to skip
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items, in name order
+     */
+    private List<FoodItem> scanNames(String lowerCase, CompressedBitmap candidates, int offset,
+        int limit) {
+        ArrayList<FoodItem> finalList = new ArrayList<FoodItem>(Math.min(limit, 1024));
+        int skipped = 0;
         for (FoodItem food : foodItemList) {
-            String temp = food.getName().toLowerCase();// Get the name of each FoodItem make it lower case
-            if (temp.contains(substring)) { // If the name contains the provided substring, add it to finalList
-                finalList.add(food);
+            if (finalList.size() == limit) { // The page is full, stop scanning
+                break;
+            }
+            if ((candidates == null || candidates.contains(food.getOrdinal()))
+                && nameIndex.lowerCaseName(food.getOrdinal()).contains(lowerCase)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    finalList.add(food);
+                }
             }
         }
         return finalList;
-    } // End filterByName()
-    
+    } // End scanNames()
+
+
+    /*
+     * Helper method to turn the ordinals found by the name index into their food items, in the
+     * order of foodItemList
+     * 
+     * @param ordinals ordinals in ascending order
+     * @return list of the food items sorted by name
+     */
+    private List<FoodItem> byName(int[] ordinals) {
+        FoodItem[] found = new FoodItem[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            found[i] = foodItemsByOrdinal.get(ordinals[i]);
+        }
+        Arrays.sort(found, NAME_ORDER); // Stable, so equal names stay in ordinal order
+        return new ArrayList<FoodItem>(Arrays.asList(found));
+    } // End byName()
+
 
     /* (non-Javadoc)
      * @see FoodDataADT#filterByNutrients(java.util.List)
      */
     @Override
     public List<FoodItem> filterByNutrients(List<String> rules) {
-        BPTree<Double, FoodItem> tree = indexes.get(rules.get(0)); // Get the BPTree associated with the input nutrient
-        return tree.rangeSearch(Double.parseDouble(rules.get(2)), rules.get(1)); // rangeSearch the BPTree with the
-                                                                                    // given comparator and nutrient
-                                                                                    // value
+        lock.readLock().lock();
+        try {
+            // Parse the rules, rules on the same nutrient are merged into one range so each index
+            // is searched once, e.g. "calories >= 50" and "calories <= 200" become calories in
+            // [50, 200]
+            Map<String, NutrientRange> ranges = NutrientRange.parseAll(rules);
+            if (ranges.isEmpty()) { // No rules, so every food item satisfies all of them
+                return new ArrayList<FoodItem>(foodItemList);
+            }
+            for (NutrientRange range : ranges.values()) {
+                if (range.isEmpty()) { // Contradicting rules, e.g. "fat >= 10" and "fat <= 5"
+                    return new ArrayList<FoodItem>();
+                }
+            }
+            String key = QueryCache.nutrientKey(ranges.values());
+            List<FoodItem> cached = queryCache.get(key);
+            if (cached != null) { // The same ranges were searched since the data last changed
+                return cached;
+            }
+
+            // Search only the index of the most selective range and check the other ranges on the
+            // food items it finds, instead of searching every index and intersecting the results
+            NutrientQuery query = NutrientQuery.plan(ranges.values(), statistics);
+            List<FoodItem> finalList = new ArrayList<FoodItem>();
+            if (query.useBitmaps) {
+                // Every range is too broad to check row by row, so intersect the ordinal bitmaps of
+                // all the ranges and only look up the food items that are left
+                CompressedBitmap matches =
+                    query.driver.searchBitmap(indexes.get(query.driver.nutrient));
+                for (NutrientRange range : query.residuals) {
+                    if (matches.isEmpty()) {
+                        break;
+                    }
+                    matches = matches.and(range.searchBitmap(indexes.get(range.nutrient)));
+                }
+                matches.forEach(ordinal -> finalList.add(foodItemsByOrdinal.get(ordinal)));
+                queryCache.putNutrientQuery(key, ranges.values(), finalList);
+                return finalList;
+            }
+
+            int[] ordinals = query.driver.search(indexes.get(query.driver.nutrient));
+            for (int ordinal : ordinals) {
+                FoodItem food = foodItemsByOrdinal.get(ordinal);
+                if (query.matchesResiduals(food)) {
+                    finalList.add(food);
+                }
+            }
+            queryCache.putNutrientQuery(key, ranges.values(), finalList);
+            return finalList;
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End filterByNutrients()
+
+
+    /**
+     * Gets one page of the food items that fulfill ALL the provided rules. The index of the most
+     * selective rule is walked lazily and the other rules are checked on each food item it
+     * finds, so the walk stops as soon as the page is full and a first page costs time in
+     * proportion to the page, not to every match.
+     * 
+     * @param rules list of rules, see filterByNutrients(List)
+     * @param offset number of matching food items to skip
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items, in ascending order of the most selective rule's
+     *         nutrient
+     * @throws IllegalArgumentException if a rule is not valid, or offset or limit is negative
+     */
+    public List<FoodItem> filterByNutrients(List<String> rules, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            checkPage(offset, limit);
+            Map<String, NutrientRange> ranges = NutrientRange.parseAll(rules);
+            if (ranges.isEmpty()) { // No rules, so the page is a slice of every food item
+                int from = Math.min(offset, foodItemList.size());
+                int to = (int) Math.min((long) from + limit, foodItemList.size());
+                return new ArrayList<FoodItem>(foodItemList.subList(from, to));
+            }
+            List<FoodItem> finalList = new ArrayList<FoodItem>(Math.min(limit, 1024));
+            for (NutrientRange range : ranges.values()) {
+                if (range.isEmpty()) {
+                    return finalList;
+                }
+            }
+
+            NutrientQuery query = NutrientQuery.plan(ranges.values(), statistics);
+            PrimitiveIterator.OfInt ordinals =
+                query.driver.iterator(indexes.get(query.driver.nutrient));
+            int skipped = 0;
+            while (finalList.size() < limit && ordinals.hasNext()) {
+                FoodItem food = foodItemsByOrdinal.get(ordinals.nextInt());
+                if (query.matchesResiduals(food)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        finalList.add(food);
+                    }
+                }
+            }
+            return finalList;
+        } finally {
+            lock.readLock().unlock();
+        }
     } // End filterByNutrients()
 
 
+    /**
+     * Gets the k food items with the lowest or highest value of a nutrient, e.g. the 20 highest
+     * protein foods. The nutrient's index is walked from one end, so only about k entries are
+     * read after a single descent.
+     * 
+     * @param nutrient name of the nutrient [CASE-INSENSITIVE]
+     * @param k number of food items wanted
+     * @param ascending true for the lowest values first, false for the highest values first
+     * @return list of at most k food items, ordered by the nutrient's value
+     * @throws IllegalArgumentException if the nutrient is unknown or k is negative
+     */
+    public List<FoodItem> topK(String nutrient, int k, boolean ascending) {
+        lock.readLock().lock();
+        try {
+            checkPage(0, k);
+            DoubleIndex index = indexes.get(nutrientName(nutrient));
+            List<FoodItem> finalList = new ArrayList<FoodItem>(Math.min(k, 1024));
+            PrimitiveIterator.OfInt ordinals = ascending
+                ? index.rangeIterator(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY,
+                    true)
+                : index.descendingIterator(Double.POSITIVE_INFINITY, true, Double.NEGATIVE_INFINITY,
+                    true);
+            while (finalList.size() < k && ordinals.hasNext()) {
+                finalList.add(foodItemsByOrdinal.get(ordinals.nextInt()));
+            }
+            return finalList;
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End topK()
+
+
+    /*
+     * Helper method to check the arguments of a page
+     * 
+     * @param offset number of items to skip
+     * @param limit maximum number of items
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    private static void checkPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Illegal page: offset " + offset + ", limit " + limit);
+        }
+    } // End checkPage()
+
+
     /* (non-Javadoc)
      * @see FoodDataADT#addFoodItem(application.FoodItem)
      */
     @Override
-    public void addFoodItem(FoodItem foodItem) {
-        foodItemList.add(foodItem); // Add the input FoodItem to foodItemList
-        Collections.sort(foodItemList, // Re-sort foodItemList by name in ascending order
-                (FoodItem food1, FoodItem food2) -> food1.getName().compareTo(food2.getName()));
+    public synchronized void addFoodItem(FoodItem foodItem) {
+        checkCSVFields(foodItem);
+        if (log != null) { // Log the food item before it is applied
+            try {
+                log.append(getCSVString(foodItem));
+            } catch (IOException e) {
+                System.err.println("Could not write the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            // Give the FoodItem the next ordinal, its values move into that row of the columns
+            foodItem.attach(nutrientColumns, nutrientColumns.append(foodItem));
+            foodItemsByOrdinal.add(foodItem);
+            nameIndex.add(foodItem.getName());
+            prefixIndex.add(foodItem);
+            // Drop the cached results the new food item belongs in
+            queryCache.invalidate(foodItem, nameIndex.lowerCaseName(foodItem.getOrdinal()));
+            for (String nutrient : NUTRIENTS) { // Insert it into every index, O(log n) each
+                indexes.get(nutrient).insert(foodItem.getNutrientValue(nutrient),
+                    foodItem.getOrdinal());
+            }
+            // Keep foodItemList sorted by name, after any food items with the same name
+            foodItemList.add(namePosition(foodItem.getName(), true), foodItem);
+            if (foodItemsById != null) {
+                foodItemsById.put(foodItem.getID(), foodItem);
+            }
+            refreshStatistics();
+        } finally {
+            lock.writeLock().unlock();
+        }
     } // End addFoodItem()
 
 
+    /**
+     * Adds many food items at once. The name list is merged with the sorted new food items in
+     * one pass, and each index either gets the new food items inserted in key order or, when the
+     * batch is large compared to the food items already loaded, is bulk loaded again.
+     * 
+     * @param foodItems the food items to add
+     * @throws IllegalArgumentException if a food item can not be written as a line of the CSV
+     *         format, none of them are added then
+     */
+    public synchronized void addFoodItems(Collection<FoodItem> foodItems) {
+        if (foodItems.isEmpty()) {
+            return;
+        }
+        for (FoodItem food : foodItems) { // Check every food item before any is logged
+            checkCSVFields(food);
+        }
+        if (log != null) { // Log the food items before they are applied, committed together
+            try {
+                for (FoodItem food : foodItems) {
+                    log.append(getCSVString(food));
+                }
+                log.commit();
+            } catch (IOException e) {
+                System.err.println("Could not write the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+        }
+        int firstOrdinal = foodItemsByOrdinal.size();
+        FoodItem[] added = foodItems.toArray(new FoodItem[0]);
+        for (int i = 0; i < added.length; i++) { // Give each FoodItem the next ordinal
+            added[i].setOrdinal(firstOrdinal + i);
+        }
+
+        // Only this thread changes the food items, so whatever does not change what queries
+        // read is built before taking the lock
+        DoubleIndex[] built = null;
+        IndexStatistics[] stats = null;
+        List<String> errors = new ArrayList<String>();
+        if ((long) added.length * REBUILD_FRACTION >= firstOrdinal + added.length) {
+            // Bulk loading every food item again is cheaper than this many inserts. The columns
+            // are copied with the new rows at the end, the live ones only grow under the lock
+            List<FoodItem> all = new ArrayList<FoodItem>(firstOrdinal + added.length);
+            all.addAll(foodItemsByOrdinal);
+            all.addAll(Arrays.asList(added));
+            double[][] columns = new double[NUTRIENTS.length][];
+            for (int n = 0; n < NUTRIENTS.length; n++) {
+                columns[n] = Arrays.copyOf(nutrientColumns.values(n), all.size());
+                for (int i = 0; i < added.length; i++) {
+                    columns[n][firstOrdinal + i] = added[i].getNutrientValue(NUTRIENTS[n]);
+                }
+            }
+            built = new DoubleIndex[NUTRIENTS.length];
+            stats = new IndexStatistics[NUTRIENTS.length];
+            buildAllIndexes(new FoodItemLoader.Loaded(all,
+                new NutrientColumns(columns, all.size()), errors), built, stats);
+        }
+
+        // Merge the sorted new food items into foodItemList, equal names keep the old ones first
+        FoodItem[] sorted = added.clone();
+        Arrays.sort(sorted, NAME_ORDER);
+        ArrayList<FoodItem> merged = new ArrayList<FoodItem>(foodItemList.size() + added.length);
+        int next = 0;
+        for (FoodItem food : foodItemList) {
+            while (next < sorted.length && NAME_ORDER.compare(sorted[next], food) < 0) {
+                merged.add(sorted[next++]);
+            }
+            merged.add(food);
+        }
+        while (next < sorted.length) {
+            merged.add(sorted[next++]);
+        }
+
+        DoubleIndex[] replaced = null;
+        lock.writeLock().lock();
+        try {
+            for (FoodItem food : added) {
+                food.attach(nutrientColumns, nutrientColumns.append(food));
+                foodItemsByOrdinal.add(food);
+                nameIndex.add(food.getName());
+                if (!queryCache.isEmpty()) {
+                    queryCache.invalidate(food, nameIndex.lowerCaseName(food.getOrdinal()));
+                }
+                if (foodItemsById != null) {
+                    foodItemsById.put(food.getID(), food);
+                }
+            }
+            if (built != null) {
+                replaced = installIndexes(built, stats);
+                loadErrors.addAll(errors);
+            } else {
+                for (String nutrient : NUTRIENTS) { // Inserting in key order keeps the path cached
+                    double[] keys = new double[added.length];
+                    int[] ordinals = new int[added.length];
+                    for (int i = 0; i < added.length; i++) {
+                        keys[i] = added[i].getNutrientValue(nutrient);
+                        ordinals[i] = firstOrdinal + i;
+                    }
+                    DoubleBPTree.sortByKey(keys, ordinals);
+                    DoubleIndex index = indexes.get(nutrient);
+                    for (int i = 0; i < keys.length; i++) {
+                        index.insert(keys[i], ordinals[i]);
+                    }
+                }
+                refreshStatistics();
+            }
+            prefixIndex.addAll(added);
+            foodItemList = merged;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (replaced != null) {
+            replaceIndexes(replaced, built);
+        }
+    } // End addFoodItems()
+
+
+    /**
+     * Removes the food item with the given id. Its ordinal is given to the food item with the
+     * last ordinal, so every index is changed in place with a few O(log n) deletes and inserts
+     * instead of being rebuilt.
+     * 
+     * @param id id of the food item
+     * @return true if a food item was removed, false if no food item has the id
+     */
+    public synchronized boolean removeFoodItem(String id) {
+        FoodItem food = findFoodItem(id);
+        if (food == null) {
+            return false;
+        }
+        if (log != null) { // Log the removal before it is applied
+            try {
+                log.appendRemove(id);
+            } catch (IOException e) {
+                System.err.println("Could not write the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            removeFoodItem(food);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    } // End removeFoodItem()
+
+
+    /*
+     * Helper method to remove a food item from everything, with the write lock held
+     * 
+     * @param food the food item
+     */
+    private void removeFoodItem(FoodItem food) {
+        int ordinal = food.getOrdinal();
+        int last = foodItemsByOrdinal.size() - 1;
+        FoodItem moved = foodItemsByOrdinal.get(last);
+        prefixIndex.remove(food); // Before the NameIndex forgets its lower case name
+        // Drop the cached results holding the food item, and those holding the moved food item
+        // since their order can follow the ordinals
+        queryCache.invalidate(food, nameIndex.lowerCaseName(ordinal));
+        queryCache.invalidate(moved, nameIndex.lowerCaseName(last));
+        for (String nutrient : NUTRIENTS) {
+            DoubleIndex index = indexes.get(nutrient);
+            index.delete(food.getNutrientValue(nutrient), ordinal);
+            if (moved != food) { // Move the last food item into the freed ordinal
+                index.delete(moved.getNutrientValue(nutrient), last);
+                index.insert(moved.getNutrientValue(nutrient), ordinal);
+            }
+        }
+        foodItemsByOrdinal.set(ordinal, moved);
+        foodItemsByOrdinal.remove(last);
+        nameIndex.remove(ordinal); // Moves the last name the same way
+        food.detach(); // Keeps its values, before its row is given to the moved food item
+        nutrientColumns.removeRow(ordinal);
+        moved.setOrdinal(ordinal);
+
+        // Equal names are next to each other in foodItemList, find this food item among them
+        for (int i = namePosition(food.getName(), false); i < foodItemList.size(); i++) {
+            if (foodItemList.get(i) == food) {
+                foodItemList.remove(i);
+                break;
+            }
+        }
+        foodItemsById.remove(food.getID());
+    } // End removeFoodItem()
+
+
+    /**
+     * Changes the value of one nutrient of the food item with the given id, e.g. to apply a
+     * correction. Only that nutrient's index is changed, with one delete and one insert.
+     * 
+     * @param id id of the food item
+     * @param nutrient name of the nutrient [CASE-INSENSITIVE]
+     * @param value new value of the nutrient
+     * @return true if the food item was changed, false if no food item has the id
+     * @throws IllegalArgumentException if the nutrient is unknown or the value is NaN
+     */
+    public synchronized boolean updateNutrient(String id, String nutrient, double value) {
+        String name = nutrientName(nutrient);
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+        FoodItem food = findFoodItem(id);
+        if (food == null) {
+            return false;
+        }
+        if (log != null) { // Log the change before it is applied
+            try {
+                log.appendUpdate(id, name, value);
+            } catch (IOException e) {
+                System.err.println("Could not write the log of " + basePath + ": "
+                    + e.getMessage());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            DoubleIndex index = indexes.get(name);
+            index.delete(food.getNutrientValue(name), food.getOrdinal());
+            food.addNutrient(name, value);
+            index.insert(value, food.getOrdinal());
+            // Only the results with a range on this nutrient change
+            queryCache.invalidateNutrient(name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    } // End updateNutrient()
+
+
+    /*
+     * Helper method to find a food item by its id, building the map of ids the first time
+     * 
+     * @param id id of the food item
+     * @return the food item, null if no food item has the id
+     */
+    private FoodItem findFoodItem(String id) {
+        if (foodItemsById == null) {
+            foodItemsById = new HashMap<String, FoodItem>(foodItemsByOrdinal.size() * 2);
+            for (FoodItem food : foodItemsByOrdinal) {
+                foodItemsById.put(food.getID(), food);
+            }
+        }
+        return foodItemsById.get(id);
+    } // End findFoodItem()
+
+
+    /*
+     * Helper method to binary search foodItemList for a name
+     * 
+     * @param name name to find
+     * @param after true for the position after the food items with the name, where a new food
+     *        item goes, false for the position of the first of them
+     * @return index in foodItemList
+     */
+    private int namePosition(String name, boolean after) {
+        int low = 0;
+        int high = foodItemList.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = foodItemList.get(middle).getName().compareTo(name);
+            if (comparison < 0 || (after && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    } // End namePosition()
+
+
+    /*
+     * Helper method to build the statistics again once the food items added since they were
+     * built could have moved the estimates noticeably
+     */
+    private void refreshStatistics() {
+        if ((long) statistics.get(NUTRIENTS[0]).size() * STALE_STATISTICS_GROWTH
+            >= (long) foodItemsByOrdinal.size() * 4) {
+            return; // Grown by less than a quarter
+        }
+        for (int n = 0; n < NUTRIENTS.length; n++) {
+            double[] keys = nutrientColumns.copy(n);
+            Arrays.sort(keys);
+            statistics.put(NUTRIENTS[n], new IndexStatistics(keys));
+        }
+    } // End refreshStatistics()
+
+
     /* (non-Javadoc)
      * @see FoodDataADT#getAllFoodItems()
      */
     @Override
     public List<FoodItem> getAllFoodItems() {
-        return foodItemList;
+        lock.readLock().lock();
+        try {
+            return new ArrayList<FoodItem>(foodItemList); // A copy, later changes do not show
+        } finally {
+            lock.readLock().unlock();
+        }
     } // End getAllFoodItems()
 
 
@@ -172,18 +1358,77 @@ public class FoodData implements FoodDataADT<FoodItem> {
      * @see FoodDataADT#saveFoodItems(java.lang.String)
      */
     @Override
-    public void saveFoodItems(String filename) {
+    public synchronized void saveFoodItems(String filename) {
+        lock.readLock().lock();
         try {
-            PrintWriter output = new PrintWriter(filename); // Create a new PrintWriter to the input filename
-            for (FoodItem food : foodItemList) { // For each item in FoodItemList
-                output.println(getCSVString(food)); // Print a new line with the string returned by getCSVString()
+            try {
+                writeCSV(filename, log != null);
+                if (log != null && Paths.get(filename).toAbsolutePath().normalize()
+                    .equals(Paths.get(basePath).toAbsolutePath().normalize())) {
+                    log.reset(); // The loaded file now holds every logged food item
+                }
+            } catch (FileNotFoundException e) { 
+                System.out.println("FileNotFoundException thrown");
+            } catch (IOException e) {
+                System.err.println("Could not save " + filename + ": " + e.getMessage());
             }
-            output.close(); // Close the PrintWriter
-        } catch (FileNotFoundException e) { 
-            System.out.println("FileNotFoundException thrown");
+        } finally {
+            lock.readLock().unlock();
         }
     } // End saveFoodItems()
 
+
+    /*
+     * Helper method to write every food item to a CSV file
+     * 
+     * @param filename name of the file
+     * @param sync if the file is forced to the disk before returning
+     * @throws FileNotFoundException if the file can not be created
+     * @throws IOException if the file can not be written
+     */
+    private void writeCSV(String filename, boolean sync) throws IOException {
+        FileOutputStream file = new FileOutputStream(filename);
+        PrintWriter output = new PrintWriter(new BufferedWriter( // Create a new PrintWriter to the input filename
+            new OutputStreamWriter(file, StandardCharsets.UTF_8)));
+        for (FoodItem food : foodItemList) { // For each item in FoodItemList
+            output.println(getCSVString(food)); // Print a new line with the string returned by getCSVString()
+        }
+        output.flush();
+        try {
+            if (output.checkError()) { // PrintWriter hides write errors until asked
+                throw new IOException("Could not write " + filename);
+            }
+            if (sync) {
+                file.getFD().sync();
+            }
+        } finally {
+            output.close(); // Close the PrintWriter
+        }
+    } // End writeCSV()
+
+
+    /**
+     * Saves every food item as a binary snapshot. A snapshot holds the same data as the CSV file
+     * written by saveFoodItems but loads much faster, because it is stored as columns together
+     * with the sorted order of every index and of the names. loadFoodItems recognizes a snapshot
+     * by its first bytes, so either kind of file can be loaded.
+     * 
+     * @param filename name of the file where the snapshot needs to be saved
+     */
+    public void saveSnapshot(String filename) {
+        lock.readLock().lock();
+        try {
+            try {
+                FoodDataSnapshot.write(filename, foodItemsByOrdinal, foodItemList,
+                    nutrientColumns);
+            } catch (IOException e) {
+                System.err.println("Could not write " + filename + ": " + e.getMessage());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End saveSnapshot()
+
     
     /*
      * Helper method to convert a FoodItem object into a string, formated as a line
@@ -205,5 +1450,29 @@ public class FoodData implements FoodDataADT<FoodItem> {
         
         return csvString; //Return the string as a line of
     } //End getCSVString()
+
+
+    /*
+     * Helper method to check that a food item can be written as a line of the csv file and
+     * read back. The format has no quoting, so a comma or a line break in the id or name would
+     * split the line into the wrong fields, and a line without an id is skipped when read.
+     *
+     * @param foodItem the food item to check
+     * @throws IllegalArgumentException if the id is empty or the id or name has a comma or a
+     *         line break
+     */
+    private static void checkCSVFields(FoodItem foodItem) {
+        String id = foodItem.getID();
+        String name = foodItem.getName();
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("A food item needs an id");
+        }
+        for (String field : new String[] {id, name}) {
+            if (field != null && (field.indexOf(',') >= 0 || field.indexOf('\n') >= 0
+                || field.indexOf('\r') >= 0)) {
+                throw new IllegalArgumentException("No commas or line breaks allowed: " + field);
+            }
+        }
+    } // End checkCSVFields()
     
 } //End FoodData class
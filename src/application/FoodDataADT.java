@@ -82,6 +82,8 @@ public interface FoodDataADT<F extends FoodItem> {
     /**
      * Adds a food item to the loaded data.
      * @param foodItem the food item instance to be added
+     * @throws IllegalArgumentException if its id is empty or its id or name has a comma or a
+     *         line break, which a line of the csv file can not hold
      */
     public void addFoodItem(FoodItem foodItem);
 
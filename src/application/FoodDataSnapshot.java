@@ -0,0 +1,426 @@
+package application;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Filename: FoodDataSnapshot.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Ids and names must fit in 2GB each
+ *
+ * This class reads and writes snapshots, a binary columnar copy of the loaded food items that
+ * starts much faster than a CSV file. Besides the columns a snapshot stores the order the
+ * indexes and the name list need, so loading is mostly copying mapped pages into arrays: there is
+ * nothing to parse and nothing to sort, and each index is bulk loaded straight from its sorted
+ * order.
+ *
+ * Layout (little-endian, every int and double array starts on an 8 byte boundary):
+ *
+ * int magic, int version, int rows, int nutrients, then for each nutrient its name as an int
+ * length and UTF-8 bytes. Then the id arena (int[rows + 1] offsets followed by the UTF-8 bytes),
+ * the name arena in the same form, one double[rows] column per nutrient in ordinal order, one
+ * int[rows] per nutrient with the ordinals in ascending order of that nutrient's value, and an
+ * int[rows] with the ordinals in ascending order of name.
+ *
+ */
+class FoodDataSnapshot {
+
+    // First four bytes of every snapshot, "FQSP"
+    static final int MAGIC = 0x50535146;
+
+    // Version written by this class, bumped whenever the layout changes
+    static final int VERSION = 1;
+
+    // Size of the buffer used while writing
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    /**
+     * Checks if a file is a snapshot by looking at its first bytes
+     *
+     * @param filePath path of the file
+     * @return true if the file starts with the snapshot magic number
+     */
+    static boolean isSnapshot(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // reads until the magic number is in or the file ends
+            }
+            return !buffer.hasRemaining() && buffer.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false; // loading reports why the file can not be read
+        }
+    } // End isSnapshot()
+
+
+    /**
+     * Writes a snapshot
+     *
+     * @param filePath path of the snapshot, replaced if it exists
+     * @param foodItems every food item in ordinal order
+     * @param byName the same food items sorted by name
+     * @param columns nutrient values of the food items
+     * @throws IOException if the snapshot can not be written
+     */
+    static void write(String filePath, List<FoodItem> foodItems, List<FoodItem> byName,
+        NutrientColumns columns) throws IOException {
+        int rows = foodItems.size();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(rows);
+            out.putInt(FoodData.NUTRIENTS.length);
+            for (String nutrient : FoodData.NUTRIENTS) {
+                out.putString(nutrient);
+            }
+
+            byte[][] ids = new byte[rows][];
+            byte[][] names = new byte[rows][];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = foodItems.get(i).getID().getBytes(StandardCharsets.UTF_8);
+                names[i] = foodItems.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            }
+            out.putArena(ids);
+            out.putArena(names);
+
+            for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+                out.align();
+                double[] column = columns.values(n);
+                for (int i = 0; i < rows; i++) {
+                    out.putDouble(column[i]);
+                }
+            }
+            // the order bulkLoad would sort them in
+            for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+                int[] ordinals = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    ordinals[i] = i;
+                }
+                DoubleBPTree.sortByKey(columns.copy(n), ordinals);
+                out.putInts(ordinals);
+            }
+            int[] nameOrder = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                nameOrder[i] = byName.get(i).getOrdinal();
+            }
+            out.putInts(nameOrder);
+            out.flush();
+            channel.force(true);
+        }
+    } // End write()
+
+
+    /**
+     * Reads a snapshot
+     *
+     * @param filePath path of the snapshot
+     * @return the food items in ordinal order with their columns, index orders and name order
+     * @throws IOException if the file can not be read, is not a snapshot or has an unknown
+     *         version or nutrients
+     */
+    static FoodItemLoader.Loaded read(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot: " + filePath);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int rows = in.getInt();
+            if (rows < 0) {
+                throw new IOException("Snapshot has " + rows + " rows");
+            }
+            int nutrients = in.getInt();
+            if (nutrients != FoodData.NUTRIENTS.length) {
+                throw new IOException("Snapshot has " + nutrients + " nutrients");
+            }
+            for (String nutrient : FoodData.NUTRIENTS) {
+                String name = in.getString();
+                if (!nutrient.equals(name)) {
+                    throw new IOException("Snapshot has nutrient " + name + " instead of "
+                        + nutrient);
+                }
+            }
+
+            int[] idOffsets = in.getInts(rows + 1);
+            byte[] idBytes = in.getBytes(idOffsets[rows]);
+            int[] nameOffsets = in.getInts(rows + 1);
+            byte[] nameBytes = in.getBytes(nameOffsets[rows]);
+            double[][] columns = new double[nutrients][];
+            for (int n = 0; n < nutrients; n++) {
+                columns[n] = in.getDoubles(rows);
+            }
+            int[][] sortedOrdinals = new int[nutrients][];
+            for (int n = 0; n < nutrients; n++) {
+                sortedOrdinals[n] = in.getInts(rows);
+            }
+            int[] nameOrder = in.getInts(rows);
+            for (int n = 0; n < nutrients; n++) {
+                checkOrder(sortedOrdinals[n], columns[n]);
+            }
+            checkOrder(nameOrder, null);
+
+            // the food items are still objects, make them on every core over the columns
+            NutrientColumns nutrientColumns = new NutrientColumns(columns, rows);
+            FoodItem[] foodItems = new FoodItem[rows];
+            IntStream.range(0, rows).parallel().forEach(i -> {
+                FoodItem food = new FoodItem(
+                    new String(idBytes, idOffsets[i], idOffsets[i + 1] - idOffsets[i],
+                        StandardCharsets.UTF_8),
+                    new String(nameBytes, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i],
+                        StandardCharsets.UTF_8));
+                food.attach(nutrientColumns, i);
+                foodItems[i] = food;
+            });
+            return new FoodItemLoader.Loaded(new ArrayList<FoodItem>(Arrays.asList(foodItems)),
+                nutrientColumns, new ArrayList<String>(), sortedOrdinals, nameOrder);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Snapshot is truncated or corrupt: " + filePath, e);
+        }
+    } // End read()
+
+    /*
+     * Helper method to check that an order stored in a snapshot holds every ordinal once and, for
+     * an index order, that the column is ascending in it with equal values in ordinal order
+     *
+     * @param ordinals the order
+     * @param column the column it sorts, null for the name order
+     * @throws IOException if the order is corrupt
+     */
+    private static void checkOrder(int[] ordinals, double[] column) throws IOException {
+        boolean[] seen = new boolean[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            int ordinal = ordinals[i];
+            if (ordinal < 0 || ordinal >= ordinals.length || seen[ordinal]) {
+                throw new IOException("Snapshot order is corrupt at " + i);
+            }
+            seen[ordinal] = true;
+            if (column != null && i > 0 && !(column[ordinals[i - 1]] < column[ordinal]
+                || (column[ordinals[i - 1]] == column[ordinal] && ordinals[i - 1] < ordinal))) {
+                throw new IOException("Snapshot index order is not sorted at " + i);
+            }
+        }
+    } // End checkOrder()
+
+    /**
+     * Writes sections to a file through one reusable buffer, tracking the position so sections
+     * can be aligned
+     */
+    private static class Writer {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+            ByteBuffer.allocate(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        /**
+         * Constructor
+         *
+         * @param channel file to write to
+         */
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes an int
+         */
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        /**
+         * Writes a double
+         */
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+            position += 8;
+        }
+
+        /**
+         * Writes an aligned int array
+         */
+        void putInts(int[] values) throws IOException {
+            align();
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        /**
+         * Writes a String as its length and UTF-8 bytes
+         */
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        /**
+         * Writes byte strings as an offset table followed by their concatenated bytes
+         */
+        void putArena(byte[][] strings) throws IOException {
+            align();
+            int offset = 0;
+            putInt(offset);
+            for (byte[] string : strings) {
+                offset = Math.addExact(offset, string.length);
+                putInt(offset);
+            }
+            for (byte[] string : strings) {
+                putBytes(string);
+            }
+        }
+
+        /**
+         * Writes a byte array
+         */
+        void putBytes(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+            position += bytes.length;
+        }
+
+        /**
+         * Pads with zeros to the next 8 byte boundary
+         */
+        void align() throws IOException {
+            while (position % 8 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        /*
+         * Makes room in the buffer for the next value
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes out everything in the buffer
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    } // End of class Writer
+
+    /**
+     * Reads sections from a file, mapping each array section on its own so no single mapping has
+     * to cover the whole file
+     */
+    private static class Reader {
+
+        private final FileChannel channel;
+        private long position;
+
+        /**
+         * Constructor
+         *
+         * @param channel file to read from
+         */
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads an int
+         */
+        int getInt() throws IOException {
+            return map(4).getInt();
+        }
+
+        /**
+         * Reads a String written as its length and UTF-8 bytes
+         */
+        String getString() throws IOException {
+            return new String(getBytes(getInt()), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads an aligned int array
+         */
+        int[] getInts(int count) throws IOException {
+            align();
+            int[] values = new int[count];
+            map(4L * count).asIntBuffer().get(values);
+            return values;
+        }
+
+        /**
+         * Reads an aligned double array
+         */
+        double[] getDoubles(int count) throws IOException {
+            align();
+            double[] values = new double[count];
+            map(8L * count).asDoubleBuffer().get(values);
+            return values;
+        }
+
+        /**
+         * Reads a byte array
+         */
+        byte[] getBytes(int count) throws IOException {
+            ByteBuffer mapped = map(count);
+            byte[] values = new byte[count];
+            mapped.get(values);
+            return values;
+        }
+
+        /*
+         * Skips to the next 8 byte boundary
+         */
+        private void align() {
+            position = (position + 7) & ~7L;
+        }
+
+        /*
+         * Maps the next bytes of the file and moves past them
+         */
+        private ByteBuffer map(long bytes) throws IOException {
+            if (bytes < 0 || position + bytes > channel.size()) {
+                throw new IOException("Snapshot is truncated");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            return mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    } // End of class Reader
+
+} // End FoodDataSnapshot class
@@ -4,7 +4,9 @@ import java.util.HashMap;
 import java.util.List;
 
 /**
- * This class represents a food item with all its properties.
+ * This class represents a food item with all its properties. Once it is added to a FoodData the
+ * values of FoodData.NUTRIENTS are kept in the NutrientColumns of that FoodData, in the row of its
+ * ordinal, and the food item only reads and writes them there.
  * 
  * @author aka
  */
@@ -15,8 +17,15 @@ public class FoodItem {
     // The id of the food item.
     private String id;
 
-    // Map of nutrients and value.
+    // Map of nutrients and value, for the nutrients not kept in columns. Null if there are none.
     private HashMap<String, Double> nutrients;
+
+    // Position of the food item in the FoodData it was added to, -1 if it has not been added
+    private int ordinal = -1;
+
+    // Columns of the FoodData it was added to, its row is its ordinal. Null if it has not been
+    // added, then every value is in nutrients.
+    private NutrientColumns columns;
     
     /**
      * Constructor
@@ -26,7 +35,6 @@ public class FoodItem {
     public FoodItem(String id, String name) {
         this.name = name;
         this.id= id;
-        nutrients = new HashMap<String, Double>();
     }
     
     /**
@@ -47,13 +55,76 @@ public class FoodItem {
         return id;
     }
     
+    /**
+     * Gets the ordinal of the food item, its position in the FoodData it was added to. The
+     * nutrient indexes store ordinals instead of references to the food items.
+     * 
+     * @return ordinal of the food item, -1 if it has not been added to a FoodData
+     */
+    int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Sets the ordinal of the food item
+     * 
+     * @param ordinal position of the food item in its FoodData
+     */
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+    
+    /**
+     * Makes the food item read and write its values of FoodData.NUTRIENTS in a row of columns.
+     * The row must already hold them, the values kept in the food item are dropped.
+     * 
+     * @param columns columns of the FoodData it is added to
+     * @param ordinal position of the food item in that FoodData, its row
+     */
+    void attach(NutrientColumns columns, int ordinal) {
+        this.columns = columns;
+        this.ordinal = ordinal;
+        if (nutrients != null) {
+            for (String nutrient : FoodData.NUTRIENTS) {
+                nutrients.remove(nutrient);
+            }
+            if (nutrients.isEmpty()) {
+                nutrients = null;
+            }
+        }
+    }
+
+    /**
+     * Copies the values out of the columns into the food item, when it is removed from its
+     * FoodData and its row is given to another food item
+     */
+    void detach() {
+        if (columns != null) {
+            if (nutrients == null) {
+                nutrients = new HashMap<String, Double>();
+            }
+            for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+                nutrients.put(FoodData.NUTRIENTS[n], columns.get(n, ordinal));
+            }
+            columns = null;
+        }
+        ordinal = -1;
+    }
+    
     /**
      * Gets the nutrients of the food item
      * 
-     * @return nutrients of the food item
+     * @return a copy of the nutrients of the food item, use addNutrient to change a value
      */
     public HashMap<String, Double> getNutrients() {
-        return nutrients;
+        HashMap<String, Double> copy = nutrients == null ? new HashMap<String, Double>()
+            : new HashMap<String, Double>(nutrients);
+        if (columns != null) {
+            for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+                copy.put(FoodData.NUTRIENTS[n], columns.get(n, ordinal));
+            }
+        }
+        return copy;
     }
 
     /**
@@ -61,7 +132,15 @@ public class FoodItem {
      * If nutrient already exists, updates its value.
      */
     public void addNutrient(String name, double value) {
-    		nutrients.put(name, value);
+        int n = columns == null ? -1 : NutrientColumns.column(name);
+        if (n >= 0) {
+            columns.set(n, ordinal, value);
+        } else {
+            if (nutrients == null) {
+                nutrients = new HashMap<String, Double>();
+            }
+            nutrients.put(name, value);
+        }
     }
 
     /**
@@ -69,10 +148,12 @@ public class FoodItem {
      * If not present, then returns 0.
      */
     public double getNutrientValue(String name) {
-    		if (nutrients.containsKey(name))
-    			return nutrients.get(name);
-    		else 
-    			return 0;
+        int n = columns == null ? -1 : NutrientColumns.column(name);
+        if (n >= 0) {
+            return columns.get(n, ordinal);
+        }
+        Double value = nutrients == null ? null : nutrients.get(name);
+        return value == null ? 0 : value;
     }
     
 }
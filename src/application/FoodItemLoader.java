@@ -0,0 +1,394 @@
+package application;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoublePredicate;
+
+/**
+ * Filename: FoodItemLoader.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: No known bugs
+ *
+ * This class reads a food item file in parallel. The file is memory-mapped and split into chunks
+ * that end on line boundaries, each chunk is parsed by a FoodItemParser on the common fork-join
+ * pool into its own columns (ids, names and one double[] per nutrient), and then the chunks are
+ * stitched together in file order. Malformed lines are skipped and reported by line number.
+ * Parsing has no side effects outside its chunk, so the nutrient indexes can be built afterwards
+ * from the finished columns.
+ *
+ */
+class FoodItemLoader {
+
+    // Smallest chunk worth handing to another thread
+    private static final long MIN_CHUNK = 1L << 20;
+
+    // Largest chunk, also keeps every mapping well under the 2GB limit of a MappedByteBuffer
+    private static final long MAX_CHUNK = 64L << 20;
+
+    // Number of chunks made per thread, so a slow chunk does not leave the others idle
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * This class holds everything read from a file, in file order
+     */
+    static class Loaded {
+
+        // Food items, the food item on row i has ordinal i
+        final List<FoodItem> foodItems;
+
+        // Nutrient values of the food items, read by the food items themselves, row i belongs to
+        // the food item on row i
+        final NutrientColumns columns;
+
+        // One message per malformed line that was skipped, with its line number in the file
+        final List<String> errors;
+
+        // sortedOrdinals[n] has the ordinals in ascending order of FoodData.NUTRIENTS[n], the
+        // order bulkLoad would sort them in, or null if the columns still have to be sorted
+        final int[][] sortedOrdinals;
+
+        // Ordinals in ascending order of name, or null if the food items still have to be sorted
+        final int[] nameOrder;
+
+        /**
+         * Constructor
+         *
+         * @param foodItems food items in file order
+         * @param columns nutrient columns in file order
+         * @param errors messages of the malformed lines
+         */
+        Loaded(List<FoodItem> foodItems, NutrientColumns columns, List<String> errors) {
+            this(foodItems, columns, errors, null, null);
+        }
+
+        /**
+         * Constructor for food items that are already in index and name order
+         *
+         * @param foodItems food items in file order
+         * @param columns nutrient columns in file order
+         * @param errors messages of the malformed lines
+         * @param sortedOrdinals ordinals in ascending order of each nutrient
+         * @param nameOrder ordinals in ascending order of name
+         */
+        Loaded(List<FoodItem> foodItems, NutrientColumns columns, List<String> errors,
+            int[][] sortedOrdinals, int[] nameOrder) {
+            this.foodItems = foodItems;
+            this.columns = columns;
+            this.errors = errors;
+            this.sortedOrdinals = sortedOrdinals;
+            this.nameOrder = nameOrder;
+        }
+
+        /**
+         * Drops food items, e.g. the ones removed by the write-ahead log. The rows that are
+         * kept are copied into new columns in the same order. The loaded orders no longer match
+         * the ordinals, so the result has none.
+         *
+         * @param removed the food items to drop
+         * @return the food items and columns without them
+         */
+        Loaded withoutRows(Set<FoodItem> removed) {
+            List<FoodItem> kept = new ArrayList<FoodItem>(foodItems.size());
+            NutrientColumns keptColumns = new NutrientColumns(
+                new double[FoodData.NUTRIENTS.length][Math.max(16, foodItems.size())], 0);
+            for (FoodItem food : foodItems) {
+                if (!removed.contains(food)) {
+                    food.attach(keptColumns, keptColumns.append(food));
+                    kept.add(food);
+                }
+            }
+            return new Loaded(kept, keptColumns, errors);
+        }
+
+        /**
+         * Appends food items after the loaded ones. Their rows are added to the same columns, so
+         * this Loaded is not used afterwards. The loaded orders no longer cover every food item,
+         * so the result has none and the columns will be sorted again.
+         *
+         * @param more food items to append, their ordinals are set to follow the loaded ones
+         * @return the food items and columns with the new food items at the end
+         */
+        Loaded withRows(List<FoodItem> more) {
+            List<FoodItem> allFoodItems = new ArrayList<FoodItem>(foodItems.size() + more.size());
+            allFoodItems.addAll(foodItems);
+            for (FoodItem food : more) {
+                food.attach(columns, columns.append(food));
+                allFoodItems.add(food);
+            }
+            return new Loaded(allFoodItems, columns, errors);
+        }
+    } // End of class Loaded
+
+    /**
+     * This class represents one chunk of the file and the columns parsed from it
+     */
+    private static class Chunk {
+
+        // Position of the first byte of the chunk in the file
+        final long start;
+
+        // Position just past the last byte of the chunk
+        final long end;
+
+        // Number of lines in the chunk, including blank and malformed lines
+        int lines;
+
+        // Number of rows parsed
+        int rows;
+
+        // Line numbers in the chunk and messages of the malformed lines
+        final List<Integer> errorLines = new ArrayList<Integer>();
+        final List<String> errorMessages = new ArrayList<String>();
+
+        // Ordinal of the first row, set once every chunk before this one is parsed
+        int firstOrdinal;
+
+        // Parsed columns, the first rows entries are in use
+        String[] ids = new String[256];
+        String[] names = new String[256];
+        double[][] nutrients = new double[FoodData.NUTRIENTS.length][256];
+
+        // Food items made from the columns
+        FoodItem[] foodItems;
+
+        /**
+         * Constructor
+         *
+         * @param start position of the first byte
+         * @param end position just past the last byte
+         */
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Maps the chunk and parses every line in it. A malformed line is recorded with its line
+         * number in the chunk and skipped, the rest of the chunk is still parsed.
+         *
+         * @param channel the open file
+         * @throws IOException if the chunk can not be mapped
+         */
+        void parse(FileChannel channel) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            FoodItemParser parser = new FoodItemParser();
+            int limit = buffer.limit();
+            int lineStart = 0;
+            for (int i = 0; i <= limit; i++) {
+                if (i < limit && buffer.get(i) != '\n') {
+                    continue;
+                }
+                if (i == limit && i == lineStart) {// nothing follows the last newline
+                    break;
+                }
+                lines++;
+                try {
+                    if (parser.parse(buffer, lineStart, i)) {
+                        addRow(parser);
+                    }
+                } catch (IllegalArgumentException e) {
+                    errorLines.add(lines);
+                    errorMessages.add(e.getMessage());
+                }
+                lineStart = i + 1;
+            }
+        }
+
+        /**
+         * Adds the food item the parser just read to the columns
+         *
+         * @param parser parser holding the fields of the line
+         */
+        private void addRow(FoodItemParser parser) {
+            if (rows == ids.length) {
+                grow();
+            }
+            ids[rows] = parser.id;
+            names[rows] = parser.name;
+            for (int n = 0; n < nutrients.length; n++) {
+                nutrients[n][rows] = parser.values[n];
+            }
+            rows++;
+        }
+
+        /**
+         * Doubles the capacity of the columns
+         */
+        private void grow() {
+            ids = Arrays.copyOf(ids, rows * 2);
+            names = Arrays.copyOf(names, rows * 2);
+            for (int n = 0; n < nutrients.length; n++) {
+                nutrients[n] = Arrays.copyOf(nutrients[n], rows * 2);
+            }
+        }
+
+        /**
+         * Makes the food items of the chunk, each reading its values in the row of its ordinal
+         *
+         * @param columns columns of every chunk, holding this chunk's rows from firstOrdinal
+         */
+        void makeFoodItems(NutrientColumns columns) {
+            foodItems = new FoodItem[rows];
+            for (int i = 0; i < rows; i++) {
+                FoodItem food = new FoodItem(ids[i], names[i]);
+                food.attach(columns, firstOrdinal + i);
+                foodItems[i] = food;
+            }
+        }
+    } // End of class Chunk
+
+
+    /**
+     * Reads every food item in a file
+     *
+     * @param filePath path of the food item file
+     * @return the food items and nutrient columns in file order, each food item's ordinal is
+     *         its row
+     * @throws IOException if the file can not be read
+     */
+    static Loaded load(String filePath) throws IOException {
+        return load(filePath, parsed -> true);
+    } // End load()
+
+
+    /**
+     * Reads every food item in a file, reports how much of it is parsed and stops between
+     * chunks when asked to
+     *
+     * @param filePath path of the food item file
+     * @param progress receives the share of the file parsed so far, from 0 to 1, each time a
+     *        chunk is parsed, on the thread that parsed it, and returns false to stop reading
+     * @return the food items and nutrient columns in file order, each food item's ordinal is
+     *         its row
+     * @throws IOException if the file can not be read
+     * @throws CancellationException if progress returned false, the chunks being parsed then
+     *         are finished first
+     */
+    static Loaded load(String filePath, DoublePredicate progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+            double size = Math.max(1, channel.size());
+            AtomicLong parsed = new AtomicLong();
+            AtomicBoolean stopped = new AtomicBoolean();
+
+            // phase 1: parse every chunk into its own columns in parallel, a chunk that has not
+            // started when reading is stopped is not parsed
+            chunks.parallelStream().forEach(chunk -> {
+                if (stopped.get()) {
+                    return;
+                }
+                try {
+                    chunk.parse(channel);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (!progress.test(parsed.addAndGet(chunk.end - chunk.start) / size)) {
+                    stopped.set(true);
+                }
+            });
+            if (stopped.get()) {
+                throw new CancellationException("Stopped reading " + filePath);
+            }
+
+            // phase 2: number the rows and lines, then stitch the columns together and make the
+            // food items over them
+            int total = 0;
+            int lines = 0;
+            List<String> errors = new ArrayList<String>();
+            for (Chunk chunk : chunks) {
+                chunk.firstOrdinal = total;
+                total += chunk.rows;
+                for (int e = 0; e < chunk.errorLines.size(); e++) {
+                    errors.add("Line " + (lines + chunk.errorLines.get(e)) + ": "
+                        + chunk.errorMessages.get(e));
+                }
+                lines += chunk.lines;
+            }
+            double[][] columns = new double[FoodData.NUTRIENTS.length][total];
+            for (Chunk chunk : chunks) {
+                for (int n = 0; n < columns.length; n++) {
+                    System.arraycopy(chunk.nutrients[n], 0, columns[n], chunk.firstOrdinal,
+                        chunk.rows);
+                }
+            }
+            NutrientColumns nutrientColumns = new NutrientColumns(columns, total);
+            chunks.parallelStream().forEach(chunk -> chunk.makeFoodItems(nutrientColumns));
+            FoodItem[] foodItems = new FoodItem[total];
+            for (Chunk chunk : chunks) {
+                System.arraycopy(chunk.foodItems, 0, foodItems, chunk.firstOrdinal, chunk.rows);
+            }
+            return new Loaded(new ArrayList<FoodItem>(Arrays.asList(foodItems)), nutrientColumns,
+                errors);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    } // End load()
+
+
+    /*
+     * Helper method to split the file into chunks that each end just after a newline
+     *
+     * @param channel the open file
+     * @return the chunks in file order
+     * @throws IOException if the file can not be read
+     */
+    private static List<Chunk> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (threads * CHUNKS_PER_THREAD)));
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        long start = 0;
+        while (start < size) {
+            long end = start + target >= size ? size : nextLine(channel, start + target);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    } // End split()
+
+
+    /*
+     * Helper method to find the position just after the next newline
+     *
+     * @param channel the open file
+     * @param position where to start looking
+     * @return position just after the newline, or the size of the file if there is none
+     * @throws IOException if the file can not be read
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < channel.size()) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return channel.size();
+    } // End nextLine()
+
+} // End FoodItemLoader class
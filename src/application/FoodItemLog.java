@@ -0,0 +1,464 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Filename: FoodItemLog.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: A crash can only lose the batch that was not committed yet
+ *
+ * This class is the write-ahead log of the changes made since the base file was written. Each
+ * added food item, removed food item and changed nutrient is appended as one record, so making
+ * it durable costs as much as the record and not as much as rewriting the whole file. Records
+ * are committed in groups: they are collected in a buffer and written with a single write once
+ * the group is full, and the file is forced to the disk after each write if the sync policy asks
+ * for it.
+ *
+ * The file starts with a magic number and a version, followed by records of an int payload
+ * length, the CRC32 of the payload and the payload: a byte for the kind of change, then the
+ * added food item as a line of the CSV format, the id of the removed food item, or
+ * "nutrient,value,id" for a changed nutrient. When the log is opened its records are read back;
+ * a torn or corrupt record at the end (a write cut short by a crash) ends the log and is cut
+ * off. A record whose checksum matches was written that way, so one that can not be read is
+ * skipped and reported instead, and the records after it are still read. A log of version 1, which only held added food items without the kind byte, is rewritten
+ * in the current version when it is opened.
+ *
+ */
+class FoodItemLog implements Closeable {
+
+    // First four bytes of the file, "FQWL"
+    private static final int MAGIC = 0x4C575146;
+
+    // Version of the record layout
+    private static final int VERSION = 2;
+
+    // Version whose records are all added food items, without a kind
+    private static final int ADDS_ONLY_VERSION = 1;
+
+    // Bytes before the first record
+    private static final int HEADER = 8;
+
+    // Bytes before the payload of a record
+    private static final int RECORD_HEADER = 8;
+
+    // Open log file
+    private final FileChannel channel;
+
+    // Number of records committed with one write
+    private final int groupSize;
+
+    // When batches are forced to the disk
+    private final FoodData.SyncPolicy syncPolicy;
+
+    // Changes read back when the log was opened, in the order they were made
+    private final List<Record> recovered;
+
+    // One message per whole record that could not be read back and was skipped
+    private final List<String> errors;
+
+    // Records waiting for the group to fill
+    private ByteBuffer batch = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private int pending;
+
+    /**
+     * This class is one change read back from the log
+     */
+    static class Record {
+
+        // Kinds of change, the first byte of a payload
+        static final byte ADD = 'A';
+        static final byte REMOVE = 'R';
+        static final byte UPDATE = 'U';
+
+        // Kind of change
+        final byte kind;
+
+        // The added food item, null for the other kinds
+        final FoodItem food;
+
+        // Id of the removed or changed food item, null for an add
+        final String id;
+
+        // Changed nutrient and its new value, for an update
+        final String nutrient;
+        final double value;
+
+        /**
+         * Constructor
+         *
+         * @param kind kind of change
+         * @param food the added food item
+         * @param id id of the removed or changed food item
+         * @param nutrient the changed nutrient
+         * @param value new value of the nutrient
+         */
+        Record(byte kind, FoodItem food, String id, String nutrient, double value) {
+            this.kind = kind;
+            this.food = food;
+            this.id = id;
+            this.nutrient = nutrient;
+            this.value = value;
+        }
+    } // End of class Record
+
+    /**
+     * Opens a log, creating it if it does not exist, and reads back the changes in it
+     *
+     * @param filePath path of the log
+     * @param groupSize number of records committed with one write, 1 to write every record as
+     *        soon as it is appended
+     * @param syncPolicy when committed records are forced to the disk
+     * @throws IOException if the log can not be opened or is not a log
+     * @throws IllegalArgumentException if groupSize is not positive
+     */
+    FoodItemLog(String filePath, int groupSize, FoodData.SyncPolicy syncPolicy)
+        throws IOException {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("Illegal group size: " + groupSize);
+        }
+        this.groupSize = groupSize;
+        this.syncPolicy = syncPolicy;
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            recovered = new ArrayList<Record>();
+            errors = new ArrayList<String>();
+            if (channel.size() < HEADER) {
+                writeHeader();
+            } else {
+                List<byte[]> oldPayloads = new ArrayList<byte[]>();
+                long end = readRecords(filePath, oldPayloads);
+                if (end < channel.size()) {
+                    System.err.println(filePath + ": cut off a torn record at byte " + end);
+                    channel.truncate(end);
+                }
+                if (readVersion() == ADDS_ONLY_VERSION) {
+                    upgrade(oldPayloads);
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Gets the changes that were in the log when it was opened
+     *
+     * @return changes in the order they were made, added food items have no ordinals
+     */
+    List<Record> getRecovered() {
+        return recovered;
+    } // End getRecovered()
+
+
+    /**
+     * Gets the records that were skipped when the log was opened
+     *
+     * @return one message per skipped record, with its position in the log
+     */
+    List<String> getErrors() {
+        return errors;
+    } // End getErrors()
+
+
+    /**
+     * Appends an added food item. It is committed once its group is full or commit is called.
+     *
+     * @param csvLine the food item as a line of the CSV format
+     * @throws IOException if a full group can not be written
+     */
+    void append(String csvLine) throws IOException {
+        append(Record.ADD, csvLine);
+    } // End append()
+
+
+    /**
+     * Appends a removed food item. It is committed once its group is full or commit is called.
+     *
+     * @param id id of the food item
+     * @throws IOException if a full group can not be written
+     */
+    void appendRemove(String id) throws IOException {
+        append(Record.REMOVE, id);
+    } // End appendRemove()
+
+
+    /**
+     * Appends a changed nutrient. It is committed once its group is full or commit is called.
+     *
+     * @param id id of the food item
+     * @param nutrient name of the nutrient, lower case
+     * @param value new value of the nutrient
+     * @throws IOException if a full group can not be written
+     */
+    void appendUpdate(String id, String nutrient, double value) throws IOException {
+        append(Record.UPDATE, nutrient + "," + Double.toString(value) + "," + id);
+    } // End appendUpdate()
+
+
+    /*
+     * Helper method to append a record of any kind
+     *
+     * @param kind kind of change
+     * @param text the rest of the payload
+     * @throws IOException if a full group can not be written
+     */
+    private void append(byte kind, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[bytes.length + 1];
+        payload[0] = kind;
+        System.arraycopy(bytes, 0, payload, 1, bytes.length);
+        appendPayload(payload);
+    } // End append()
+
+
+    /*
+     * Helper method to add a payload with its length and checksum to the group
+     *
+     * @param payload the payload
+     * @throws IOException if a full group can not be written
+     */
+    private void appendPayload(byte[] payload) throws IOException {
+        if (batch.remaining() < RECORD_HEADER + payload.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                Math.max(batch.capacity() * 2, batch.position() + RECORD_HEADER + payload.length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            batch.flip();
+            bigger.put(batch);
+            batch = bigger;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        batch.putInt(payload.length);
+        batch.putInt((int) crc.getValue());
+        batch.put(payload);
+        pending++;
+        if (pending >= groupSize) {
+            commit();
+        }
+    } // End appendPayload()
+
+
+    /**
+     * Writes the records waiting in the group with one write, and forces them to the disk if the
+     * sync policy is ALWAYS
+     *
+     * @throws IOException if the records can not be written
+     */
+    void commit() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+        pending = 0;
+        if (syncPolicy == FoodData.SyncPolicy.ALWAYS) {
+            channel.force(false);
+        }
+    } // End commit()
+
+
+    /**
+     * Empties the log once every record in it is part of the base file
+     *
+     * @throws IOException if the log can not be truncated
+     */
+    void reset() throws IOException {
+        batch.clear();
+        pending = 0;
+        channel.truncate(HEADER);
+        channel.position(HEADER);
+        channel.force(true);
+    } // End reset()
+
+
+    /**
+     * Commits the records waiting in the group, forces the log to the disk and closes it
+     *
+     * @throws IOException if the log can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    } // End close()
+
+
+    /*
+     * Helper method to start an empty log
+     */
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    } // End writeHeader()
+
+
+    /*
+     * Helper method to read the version in the header
+     *
+     * @return the version
+     * @throws IOException if the header can not be read
+     */
+    private int readVersion() throws IOException {
+        ByteBuffer version = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (version.hasRemaining() && channel.read(version, 4 + version.position()) > 0) {
+            // the header was checked by readRecords, it is there
+        }
+        return version.getInt(0);
+    } // End readVersion()
+
+
+    /*
+     * Helper method to rewrite a log of an older version in the current one, with its added
+     * food items as the first records
+     *
+     * @param oldPayloads the payloads of the old log, CSV lines without a kind
+     * @throws IOException if the log can not be written
+     */
+    private void upgrade(List<byte[]> oldPayloads) throws IOException {
+        writeHeader();
+        channel.position(HEADER);
+        for (byte[] line : oldPayloads) {
+            byte[] payload = new byte[line.length + 1];
+            payload[0] = Record.ADD;
+            System.arraycopy(line, 0, payload, 1, line.length);
+            appendPayload(payload);
+        }
+        commit();
+        channel.force(true);
+    } // End upgrade()
+
+
+    /*
+     * Helper method to read back every whole record of the log
+     *
+     * @param filePath path of the log, for messages
+     * @param oldPayloads receives the payloads of a log of the older version, which has to be
+     *        rewritten, and stays empty for a log of the current version
+     * @return position just past the last good record
+     * @throws IOException if the log can not be read or is not a log
+     */
+    private long readRecords(String filePath, List<byte[]> oldPayloads) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Log is too large, checkpoint it: " + filePath);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // the log is read into the heap, not mapped, so it can be truncated afterwards
+        }
+        buffer.flip();
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || (version != VERSION && version != ADDS_ONLY_VERSION)) {
+            throw new IOException("Not a food item log: " + filePath);
+        }
+        int kindBytes = version == VERSION ? 1 : 0;
+        FoodItemParser parser = new FoodItemParser();
+        CRC32 crc = new CRC32();
+        int position = HEADER;
+        while (buffer.limit() - position >= RECORD_HEADER) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            int start = position + RECORD_HEADER;
+            if (length < 0 || length > buffer.limit() - start) {
+                break; // the record was cut short
+            }
+            crc.reset();
+            for (int i = start; i < start + length; i++) {
+                crc.update(buffer.get(i));
+            }
+            if ((int) crc.getValue() != checksum) {
+                break; // the record is torn
+            }
+            if (length < kindBytes) {
+                break; // no record is this short, e.g. zeros past the end of the last write
+            }
+            byte kind = kindBytes == 0 ? Record.ADD : buffer.get(start);
+            try {
+                if (kind == Record.ADD) {
+                    if (parser.parse(buffer, start + kindBytes, start + length)) {
+                        FoodItem food = new FoodItem(parser.id, parser.name);
+                        for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+                            food.addNutrient(FoodData.NUTRIENTS[n], parser.values[n]);
+                        }
+                        recovered.add(new Record(kind, food, null, null, 0));
+                    } else {
+                        throw new IllegalArgumentException("No id");
+                    }
+                } else if (kind == Record.REMOVE) {
+                    recovered.add(new Record(kind, null, text(buffer, start + 1, length - 1),
+                        null, 0));
+                } else if (kind == Record.UPDATE) {
+                    String[] fields = text(buffer, start + 1, length - 1).split(",", 3);
+                    if (fields.length < 3) {
+                        throw new IllegalArgumentException("Expected nutrient,value,id");
+                    }
+                    recovered.add(new Record(kind, null, fields[2],
+                        FoodData.nutrientName(fields[0]), Double.parseDouble(fields[1])));
+                } else {
+                    throw new IllegalArgumentException("Unknown kind of change: " + (char) kind);
+                }
+            } catch (IllegalArgumentException e) {
+                // a whole record that can not be read, the records after it are still good
+                errors.add("Log record at byte " + position + ": " + e.getMessage());
+            }
+            if (kindBytes == 0) {
+                byte[] payload = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    payload[i] = buffer.get(start + i);
+                }
+                oldPayloads.add(payload);
+            }
+            position = start + length;
+        }
+        return position;
+    } // End readRecords()
+
+
+    /*
+     * Helper method to decode the UTF-8 text of part of a payload
+     *
+     * @param buffer the log
+     * @param start position of the text
+     * @param length number of bytes
+     * @return the text
+     */
+    private static String text(ByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    } // End text()
+
+} // End FoodItemLog class
@@ -0,0 +1,233 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Filename: FoodItemParser.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Nutrient names in a line are not checked, the values are read in the
+ * order of FoodData.NUTRIENTS like the original loader did
+ *
+ * This class parses lines of a food item file in the format
+ * <id>,<name>,calories,<value>,fat,<value>,carbohydrate,<value>,fiber,<value>,protein,<value>
+ * straight from the bytes of the file. Fields are found by scanning for commas and values are
+ * parsed without making intermediate Strings, so the only objects made for a line are its id and
+ * name. One parser is reused for every line of a chunk and is not thread-safe.
+ *
+ */
+class FoodItemParser {
+
+    // Number of fields a line must have
+    static final int FIELDS = 2 + 2 * FoodData.NUTRIENTS.length;
+
+    // Powers of ten that are exact as a double
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+        1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Mantissas up to this many digits are exact as a double
+    private static final int EXACT_DIGITS = 15;
+
+    // Id of the last line parsed
+    String id;
+
+    // Name of the last line parsed
+    String name;
+
+    // Nutrient values of the last line parsed, in the order of FoodData.NUTRIENTS
+    final double[] values = new double[FoodData.NUTRIENTS.length];
+
+    // Positions of each field of the current line
+    private final int[] fieldStart = new int[FIELDS];
+    private final int[] fieldEnd = new int[FIELDS];
+
+    // Scratch space for the bytes of a String field
+    private byte[] text = new byte[64];
+
+    /**
+     * Parses one line
+     *
+     * @param buffer bytes of the file
+     * @param start position of the first byte of the line
+     * @param end position just past the last byte of the line, not including the newline
+     * @return true if a food item was parsed, false if the line is blank or has no id
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    boolean parse(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end == start || buffer.get(start) == ',') { // skips blank lines and lines with no id
+            return false;
+        }
+
+        int fields = 0;
+        int fieldFrom = start;
+        for (int i = start; i <= end && fields < FIELDS; i++) {
+            if (i == end || buffer.get(i) == ',') {
+                fieldStart[fields] = fieldFrom;
+                fieldEnd[fields] = i;
+                fields++;
+                fieldFrom = i + 1;
+            }
+        }
+        if (fields < FIELDS) {
+            throw new IllegalArgumentException("Expected " + FIELDS + " fields but found "
+                + fields);
+        }
+
+        for (int n = 0; n < values.length; n++) { // values follow each nutrient name
+            int field = 3 + 2 * n;
+            values[n] = parseDouble(buffer, fieldStart[field], fieldEnd[field]);
+        }
+        id = decode(buffer, fieldStart[0], fieldEnd[0]);
+        name = decode(buffer, fieldStart[1], fieldEnd[1]);
+        return true;
+    } // End parse()
+
+
+    /*
+     * Helper method to parse a decimal number such as 12, -0.5 or 1.2e3. Numbers with at most 15
+     * significant digits and a small exponent are computed exactly from their digits, anything
+     * else falls back to Double.parseDouble.
+     *
+     * @param buffer bytes of the file
+     * @param start position of the first byte of the field
+     * @param end position just past the last byte of the field
+     * @return the value
+     * @throws IllegalArgumentException if the field is not a number
+     */
+    private double parseDouble(ByteBuffer buffer, int start, int end) {
+        while (start < end && isSpace(buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isSpace(buffer.get(end - 1))) {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0; // significant digits in the mantissa
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (digits < 18) {
+                    if (mantissa != 0 || b != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else {
+                    digits++; // too many digits, the slow path rounds correctly
+                    if (!seenPoint) {
+                        exponent++;
+                    }
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && seenDigit && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < end && (buffer.get(j) == '-' || buffer.get(j) == '+')) {
+                negativeExponent = buffer.get(j) == '-';
+                j++;
+            }
+            int value = 0;
+            boolean seenExponentDigit = false;
+            for (; j < end && buffer.get(j) >= '0' && buffer.get(j) <= '9'; j++) {
+                seenExponentDigit = true;
+                value = Math.min(value * 10 + (buffer.get(j) - '0'), 100000);
+            }
+            if (seenExponentDigit) {
+                exponent += negativeExponent ? -value : value;
+                i = j;
+            }
+        }
+
+        if (!seenDigit || i != end || digits > EXACT_DIGITS
+            || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            return parseSlow(buffer, start, end); // rare: odd syntax, long or huge numbers
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+            : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    } // End parseDouble()
+
+
+    /*
+     * Helper method to parse a number the fast path can not handle
+     *
+     * @param buffer bytes of the file
+     * @param start position of the first byte of the number
+     * @param end position just past the last byte of the number
+     * @return the value
+     * @throws IllegalArgumentException if the field is not a number
+     */
+    private double parseSlow(ByteBuffer buffer, int start, int end) {
+        String field = decode(buffer, start, end);
+        double value;
+        try {
+            value = Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: \"" + field + "\"");
+        }
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Not a number: \"" + field + "\"");
+        }
+        return value;
+    } // End parseSlow()
+
+
+    /*
+     * Helper method to make a String from UTF-8 bytes
+     *
+     * @param buffer bytes of the file
+     * @param start position of the first byte
+     * @param end position just past the last byte
+     * @return the String
+     */
+    private String decode(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > text.length) {
+            text = Arrays.copyOf(text, Math.max(length, text.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            text[i] = buffer.get(start + i);
+        }
+        return new String(text, 0, length, StandardCharsets.UTF_8);
+    } // End decode()
+
+
+    /*
+     * Helper method to check for the whitespace Double.parseDouble ignores around a number
+     *
+     * @param b a byte
+     * @return true if it is a space, tab or other control character
+     */
+    private static boolean isSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    } // End isSpace()
+
+} // End FoodItemParser class
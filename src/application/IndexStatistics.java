@@ -0,0 +1,113 @@
+package application;
+
+/**
+ * Filename: IndexStatistics.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Estimates are only as fresh as the last time the statistics were built
+ *
+ * This class summarizes the values in one nutrient index with an equi-depth histogram, so the
+ * number of food items in a range can be estimated without searching the index. FoodData uses
+ * the estimates to pick which index a query should be driven from.
+ *
+ */
+class IndexStatistics {
+
+    // Number of buckets in the histogram
+    private static final int BUCKETS = 64;
+
+    // Number of values summarized
+    private final int size;
+
+    // Number of distinct values
+    private final int distinct;
+
+    // Bucket boundaries, boundaries[j] is the value at rank j * (size - 1) / buckets, so each
+    // bucket holds about the same number of values
+    private final double[] boundaries;
+
+    /**
+     * Constructor that builds the statistics from the sorted values of an index
+     *
+     * @param sortedKeys values of the index in ascending order
+     */
+    IndexStatistics(double[] sortedKeys) {
+        size = sortedKeys.length;
+        int count = 0;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+                count++;
+            }
+        }
+        distinct = count;
+
+        int buckets = Math.min(BUCKETS, Math.max(size - 1, 1));
+        boundaries = new double[size == 0 ? 0 : buckets + 1];
+        for (int j = 0; j < boundaries.length; j++) {
+            boundaries[j] = sortedKeys[(int) ((long) j * (size - 1) / buckets)];
+        }
+    }
+
+
+    /**
+     * Gets the number of values summarized
+     *
+     * @return number of values
+     */
+    int size() {
+        return size;
+    } // End size()
+
+
+    /**
+     * Estimates how many values of the index are in the range
+     *
+     * @param range range of the index's nutrient
+     * @return estimated number of food items in the range
+     */
+    double estimate(NutrientRange range) {
+        if (size == 0 || range.isEmpty()) {
+            return 0;
+        }
+        double fraction = fractionBelow(range.high, range.highInclusive)
+            - fractionBelow(range.low, !range.lowInclusive);
+        double estimate = fraction * size;
+        if (range.low == range.high
+            && range.low >= boundaries[0] && range.high <= boundaries[boundaries.length - 1]) {
+            // a single value inside the histogram is expected to appear an average number of
+            // times even when it falls between boundaries
+            estimate = Math.max(estimate, (double) size / distinct);
+        }
+        return Math.max(0, Math.min(size, estimate));
+    } // End estimate()
+
+
+    /*
+     * Helper method to estimate the fraction of values below (or at most) a value, interpolating
+     * linearly inside a bucket
+     *
+     * @param value the value
+     * @param inclusive true for the fraction <= value, false for the fraction < value
+     * @return estimated fraction between 0 and 1
+     */
+    private double fractionBelow(double value, boolean inclusive) {
+        int buckets = boundaries.length - 1;
+        int j = inclusive ? DoubleBPTree.upperBound(boundaries, boundaries.length, value)
+            : DoubleBPTree.lowerBound(boundaries, boundaries.length, value);
+        if (j == 0) {
+            return 0;
+        }
+        if (j > buckets || buckets == 0) {
+            return 1;
+        }
+        double width = boundaries[j] - boundaries[j - 1];
+        double within = width > 0 ? (value - boundaries[j - 1]) / width : 0;
+        return (j - 1 + Math.min(1, Math.max(0, within))) / buckets;
+    } // End fractionBelow()
+
+} // End IndexStatistics class
@@ -4,6 +4,9 @@ package application;
 import javafx.application.Application;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.stage.FileChooser;
@@ -15,6 +18,7 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,7 +41,16 @@ import java.util.List;
  *
  */
 public class Main extends Application {
-    private FoodDataADT<FoodItem> foodItemList;
+    private FoodData foodItemList;
+
+    // Number of names suggested while the user types in the name field
+    private static final int NAME_SUGGESTIONS = 20;
+
+    // Height of a row in the food item list, in pixels
+    private static final double FOOD_ITEM_CELL_HEIGHT = 24;
+
+    // True while filter clears the name field, so its results are not replaced by the catalog
+    private boolean clearingName;
 
     public Main() {
         foodItemList = new FoodData();
@@ -69,12 +82,19 @@ public class Main extends Application {
 
             // right side of the root pane. Where input information goes
             BorderPane foodList = new BorderPane();
-            ObservableList<String> mealItems = FXCollections.observableArrayList();
+            // the meal keeps the nutrient totals, mealItems shows its food items
+            Meal meal = new Meal();
+            ObservableList<FoodItem> mealItems = FXCollections.observableArrayList();
+            // the food items shown, all of them or the last filter's results
             ObservableList<FoodItem> foodItems = FXCollections.observableArrayList();
-            ObservableList<String> foodItemsNames = FXCollections.observableArrayList();
 
-            ListView selected = new ListView(mealItems);
-            ListView fullList = new ListView(foodItemsNames);
+            // the lists hold the food items themselves and only draw the names of the rows on
+            // screen, so a new list of food items is one setAll and no names are copied
+            ListView<FoodItem> selected = new ListView<FoodItem>(mealItems);
+            ListView<FoodItem> fullList = new ListView<FoodItem>(foodItems);
+            selected.setCellFactory(list -> new FoodItemCell());
+            fullList.setCellFactory(list -> new FoodItemCell());
+            fullList.setFixedCellSize(FOOD_ITEM_CELL_HEIGHT);// rows are not measured one by one
             VBox mealItemsVbox = new VBox();
             VBox fullListVbox = new VBox();
             Label mealItemsLabel = new Label("Meal list");
@@ -86,6 +106,15 @@ public class Main extends Application {
             mealItemsVbox.getChildren().add(2, clearMealButton);
             fullListVbox.getChildren().add(0, fullListLabel);
             fullListVbox.getChildren().add(1, fullList);
+
+            // shown while a file loads in the background
+            HBox loadStatus = new HBox();
+            ProgressBar loadProgress = new ProgressBar();
+            Button cancelLoad = new Button("Cancel");
+            loadStatus.getChildren().add(loadProgress);
+            loadStatus.getChildren().add(cancelLoad);
+            loadStatus.setVisible(false);
+            fullListVbox.getChildren().add(2, loadStatus);
             foodList.setLeft(mealItemsVbox);
             foodList.setRight(fullListVbox);
 
@@ -182,20 +211,22 @@ public class Main extends Application {
 
             // event handler for leftArrow
             leftArrow.setOnAction(event -> {
-                String toAdd = (String) fullList.getSelectionModel().getSelectedItem();
+                FoodItem toAdd = fullList.getSelectionModel().getSelectedItem();
 
                 if (toAdd != null) {
                     fullList.getSelectionModel().clearSelection();
+                    meal.add(toAdd);
                     mealItems.add(toAdd);
                 }
             });
 
             // event handler for rightArrow
             rightArrow.setOnAction(event -> {
-                String toRemove = (String) selected.getSelectionModel().getSelectedItem();
+                int toRemove = selected.getSelectionModel().getSelectedIndex();
 
-                if (toRemove != null) {
+                if (toRemove >= 0) {// by position, the same food item can be in the meal twice
                     selected.getSelectionModel().clearSelection();
+                    meal.remove(toRemove);
                     mealItems.remove(toRemove);
                 }
             });
@@ -257,18 +288,9 @@ public class Main extends Application {
                         newItem.addNutrient("protein",
                             Double.parseDouble(nutritionInfoPro.getText()));
 
-                        // adds the item to all the locations it needs to be added
-                        foodItems.add(newItem);
+                        // adds the item and shows all the food items, in name order
                         foodItemList.addFoodItem(newItem);
-                        // re-adds all of the foodItems into foodItems in the correct order
-                        foodItems.clear();
-                        foodItems.addAll(foodItemList.getAllFoodItems());
-
-                        // updates foodItemsNames to be sorted
-                        foodItemsNames.clear();
-                        for (FoodItem food : foodItems) {
-                            foodItemsNames.add(food.getName());
-                        }
+                        foodItems.setAll(foodItemList.getAllFoodItems());
                         // clears all text input
                         nutritionInfoCal.clear();
                         nutritionInfoFat.clear();
@@ -277,19 +299,34 @@ public class Main extends Application {
                         nutritionInfoPro.clear();
                         foodName_Value.clear();
                         addButtonKey_Comparator.clear();
-                    } catch (IllegalArgumentException e) {
+                    } catch (NumberFormatException e) {
                         warningLabel.setText("Please fill in all fields");
                         warningLabel.setVisible(true);
                         System.out.println("user input was not correct");
+                    } catch (IllegalArgumentException e) {// an id or name the file can not hold
+                        warningLabel.setText(e.getMessage());
+                        warningLabel.setVisible(true);
                     }
                 }
             });
 
             // event handler for clearMealButton
             clearMealButton.setOnAction(event -> {
+                meal.clear();
                 mealItems.clear();
             });
 
+            // suggests names on each keystroke in the name field, from the prefix index
+            foodName.textProperty().addListener((observable, oldText, newText) -> {
+                if (newText.isEmpty()) {// filter keeps its results, the user gets the catalog
+                    if (!clearingName) {
+                        foodItems.setAll(foodItemList.getAllFoodItems());
+                    }
+                    return;
+                }
+                foodItems.setAll(foodItemList.completeName(newText, NAME_SUGGESTIONS));
+            });
+
             // event handler for filter
             filter.setOnAction(event -> {
                 String nutrient = null;
@@ -325,18 +362,26 @@ public class Main extends Application {
                     String comparator = addButtonKey_Comparator.getText();
 
                     ArrayList<String> rules = new ArrayList<String>();
-                    rules.add(nutrient);
-                    rules.add(comparator);
-                    rules.add(value);
+                    rules.add(nutrient + " " + comparator + " " + value);// "<nutrient> <comparator> <value>"
 
-                    filteredList = foodItemList.filterByNutrients(rules);
+                    try {
+                        filteredList = foodItemList.filterByNutrients(rules);
+                    } catch (IllegalArgumentException e) {// the comparator or value was not valid
+                        warningLabel.setText("Use >=, <= or == and a number");
+                        warningLabel.setVisible(true);
+                        return;
+                    }
 
                 }
-                foodItemsNames.clear();
-                for (FoodItem food : filteredList) {
-                    foodItemsNames.add(food.getName());
+                if (filteredList == null) {// neither a name nor a whole rule was given
+                    warningLabel.setText("Please fill in all fields");
+                    warningLabel.setVisible(true);
+                    return;
                 }
+                foodItems.setAll(filteredList);
+                clearingName = true;
                 foodName.clear();
+                clearingName = false;
             });
 
             // event handler for load
@@ -347,15 +392,48 @@ public class Main extends Application {
                 File file = fileChooser.showOpenDialog(primaryStage);
 
                 if (file != null) {
-                    filePath = file.getPath();
-                    
-                    foodItemList.loadFoodItems(file.getPath());
-                    foodItems.addAll(foodItemList.getAllFoodItems());
-                    // clears the list of names and then reprints the sorted version
-                    foodItemsNames.clear();
-                    for (FoodItem food : foodItems) {
-                        foodItemsNames.add(food.getName());
-                    }
+                    // loads on another thread so the window keeps responding, the old food items
+                    // stay in the list until the new ones are ready
+                    LoadTask task = new LoadTask(file.getPath());
+                    loadProgress.progressProperty().bind(task.progressProperty());
+                    cancelLoad.setOnAction(cancel -> task.cancel());
+                    loadStatus.setVisible(true);
+                    // adding or filtering would change the old food items, which are dropped
+                    load.setDisable(true);
+                    addFoodButton.setDisable(true);
+                    filter.setDisable(true);
+                    foodName.setDisable(true);
+
+                    task.setOnSucceeded(done -> {
+                        foodItemList = task.getValue();
+                        filePath = file.getPath();
+                        foodItems.setAll(foodItemList.getAllFoodItems());
+                        loadProgress.progressProperty().unbind();
+                        loadStatus.setVisible(false);
+                        load.setDisable(false);
+                        addFoodButton.setDisable(false);
+                        filter.setDisable(false);
+                        foodName.setDisable(false);
+                    });
+                    // the old food items are kept and are still in the list
+                    EventHandler<WorkerStateEvent> restore = done -> {
+                        if (task.getException() != null) {// say why the file was not loaded
+                            warningLabel.setText(task.getException().getMessage());
+                            warningLabel.setVisible(true);
+                        }
+                        loadProgress.progressProperty().unbind();
+                        loadStatus.setVisible(false);
+                        load.setDisable(false);
+                        addFoodButton.setDisable(false);
+                        filter.setDisable(false);
+                        foodName.setDisable(false);
+                    };
+                    task.setOnCancelled(restore);
+                    task.setOnFailed(restore);
+
+                    Thread loader = new Thread(task, "Load " + file.getName());
+                    loader.setDaemon(true);// does not keep the application open
+                    loader.start();
                 }
             });
 
@@ -373,26 +451,13 @@ public class Main extends Application {
 
             // event handler for analyzeMeal
             analyzeMeal.setOnAction(event -> {
-                // stores the nutrient values
-                Double calories = 0.0;
-                Double fat = 0.0;
-                Double carbohydrate = 0.0;
-                Double fiber = 0.0;
-                Double protein = 0.0;
-
-                // iterates through the selected mealItems
-                for (String name : mealItems) {
-                    // finds the index of of each mealItem name and stores the foodItem
-                    FoodItem analyzeList = foodItems.get(foodItemsNames.indexOf(name));
-
-                    // adds up the nutrient info
-                    calories = calories + analyzeList.getNutrientValue("calories");
-                    fat = fat + analyzeList.getNutrientValue("fat");
-                    carbohydrate = carbohydrate + analyzeList.getNutrientValue("carbohydrate");
-                    fiber = fiber + analyzeList.getNutrientValue("fiber");
-                    protein = protein + analyzeList.getNutrientValue("protein");
+                // the totals are kept up to date as the meal changes
+                double calories = meal.getTotal("calories");
+                double fat = meal.getTotal("fat");
+                double carbohydrate = meal.getTotal("carbohydrate");
+                double fiber = meal.getTotal("fiber");
+                double protein = meal.getTotal("protein");
 
-                }
                 outputInfo
                     .setText("Meal:\nCalories: " + calories + "\nFat: " + fat + "\nCarbohydrate: "
                         + carbohydrate + "\nFiber: " + fiber + "\nProtein: " + protein);
@@ -407,4 +472,89 @@ public class Main extends Application {
     public static void main(String[] args) {
         launch(args);
     }
+
+
+    /**
+     * This class draws a row of a food item list. Only the rows on screen have a cell, so the
+     * lists keep the food items and a name is read only when its row is drawn.
+     */
+    private static class FoodItemCell extends ListCell<FoodItem> {
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see javafx.scene.control.Cell#updateItem(java.lang.Object, boolean)
+         */
+        @Override
+        protected void updateItem(FoodItem food, boolean empty) {
+            super.updateItem(food, empty);
+            setText(empty || food == null ? null : food.getName());
+        }
+    } // End of class FoodItemCell
+
+
+    /**
+     * This class loads a file into a new FoodData off the FX application thread. The progress
+     * is the share of the file parsed, and is unknown while the indexes are built afterwards.
+     * The food items are shown once everything is built, with one change to the list, so no
+     * rows show up during the load.
+     * 
+     * A cancelled load stops between the chunks of the file being parsed and the FoodData it
+     * built is dropped; once the file is parsed the indexes are still built first.
+     */
+    private static class LoadTask extends Task<FoodData> {
+
+        // Load errors written out in the message of a failed load, the rest are counted
+        private static final int ERRORS_SHOWN = 3;
+
+        // File to load
+        private final String path;
+
+        LoadTask(String path) {
+            this.path = path;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see javafx.concurrent.Task#call()
+         */
+        @Override
+        protected FoodData call() throws Exception {
+            FoodData loaded = new FoodData();
+            loaded.loadFoodItems(path, parsed -> {
+                if (parsed < 1) {
+                    updateProgress(parsed, 1);
+                } else {
+                    updateProgress(-1, 1);// the indexes are being built
+                }
+                return !isCancelled();
+            });
+            if (isCancelled()) {
+                return null;
+            }
+            if (loaded.getAllFoodItems().isEmpty() && !loaded.getLoadErrors().isEmpty()) {
+                // the file could not be read, or every line was malformed, keep the old items
+                throw new IOException(message(loaded.getLoadErrors()));
+            }
+            return loaded;
+        }
+
+        /*
+         * Helper method to make one message of the load errors, the first few in full
+         *
+         * @param errors messages of the load errors, at least one
+         * @return the message
+         */
+        private static String message(List<String> errors) {
+            StringBuilder message = new StringBuilder("Not loaded");
+            for (String error : errors.subList(0, Math.min(errors.size(), ERRORS_SHOWN))) {
+                message.append('\n').append(error);
+            }
+            if (errors.size() > ERRORS_SHOWN) {
+                message.append("\nand ").append(errors.size() - ERRORS_SHOWN).append(" more");
+            }
+            return message.toString();
+        }
+    } // End of class LoadTask
 }
@@ -0,0 +1,181 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filename: Meal.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: The nutrient values of a food item are read when it is added, a value
+ * changed later is not in the totals until the food item is removed and added again. Removing by
+ * position shifts the food items after it, like ArrayList.remove, only the totals are O(1).
+ *
+ * This class is a meal, a list of food items with the totals of their nutrients. The food items
+ * are kept by reference, so two food items with the same name are never mixed up, and the same
+ * food item can be in a meal more than once. The totals are updated as food items are added and
+ * removed, so analyzing a meal reads them instead of adding up every food item again. Adding and
+ * subtracting rounds, so each total keeps a bound on its rounding error and is added up again
+ * from the food items' values once the bound is no longer small next to the total.
+ *
+ */
+public class Meal {
+
+    // Food items in the order they were added
+    private final ArrayList<FoodItem> foodItems;
+
+    // Nutrient values of each food item as it was added, in the order of FoodData.NUTRIENTS,
+    // beside the food item at the same position, so a removed food item takes away what it added
+    private final ArrayList<double[]> values;
+
+    // Total of each nutrient of FoodData.NUTRIENTS, in the same order
+    private final double[] totals;
+
+    // Sum of the rounding errors of the additions and subtractions that made each total
+    private final double[] errors;
+
+    // Largest rounding error allowed in a total, relative to the total
+    private static final double MAX_RELATIVE_ERROR = 1e-9;
+
+    /**
+     * Builds an empty meal
+     */
+    public Meal() {
+        foodItems = new ArrayList<FoodItem>();
+        values = new ArrayList<double[]>();
+        totals = new double[FoodData.NUTRIENTS.length];
+        errors = new double[FoodData.NUTRIENTS.length];
+    }
+
+
+    /**
+     * Adds a food item to the end of the meal
+     *
+     * @param food the food item
+     * @throws IllegalArgumentException if the food item is null
+     */
+    public void add(FoodItem food) {
+        if (food == null) {
+            throw new IllegalArgumentException("Null food item");
+        }
+        double[] added = new double[FoodData.NUTRIENTS.length];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = food.getNutrientValue(FoodData.NUTRIENTS[i]);
+            addToTotal(i, added[i]);
+        }
+        foodItems.add(food);
+        values.add(added);
+    }
+
+
+    /**
+     * Removes the food item at a position in the meal. The totals are updated in O(1), the food
+     * items after it move down one position.
+     *
+     * @param position position of the food item, 0 is the first added
+     * @return the removed food item
+     * @throws IndexOutOfBoundsException if there is no food item at the position
+     */
+    public FoodItem remove(int position) {
+        FoodItem food = foodItems.remove(position);
+        double[] removed = values.remove(position);
+        if (foodItems.isEmpty()) {
+            Arrays.fill(totals, 0);// no rounding left over from the subtractions
+            Arrays.fill(errors, 0);
+            return food;
+        }
+        for (int i = 0; i < removed.length; i++) {
+            addToTotal(i, -removed[i]);
+            if (errors[i] > MAX_RELATIVE_ERROR * Math.abs(totals[i])) {
+                recompute(i);// the subtraction cancelled most of the total
+            }
+        }
+        return food;
+    }
+
+
+    /*
+     * Helper method to add a value to a total and to the bound on its rounding error. The
+     * rounding error of one addition is found exactly from its result (Knuth's TwoSum).
+     *
+     * @param i position of the nutrient in FoodData.NUTRIENTS
+     * @param value the value to add, negative to take it away
+     */
+    private void addToTotal(int i, double value) {
+        double total = totals[i] + value;
+        double fromTotal = total - value;
+        double rounding = (totals[i] - fromTotal) + (value - (total - fromTotal));
+        totals[i] = total;
+        errors[i] += Math.abs(rounding);
+    } // End addToTotal()
+
+
+    /*
+     * Helper method to add up a total again from the values of the food items in the meal
+     *
+     * @param i position of the nutrient in FoodData.NUTRIENTS
+     */
+    private void recompute(int i) {
+        totals[i] = 0;
+        errors[i] = 0;
+        for (double[] added : values) {
+            addToTotal(i, added[i]);
+        }
+    } // End recompute()
+
+
+    /**
+     * Removes every food item
+     */
+    public void clear() {
+        foodItems.clear();
+        values.clear();
+        Arrays.fill(totals, 0);
+        Arrays.fill(errors, 0);
+    }
+
+
+    /**
+     * Gets the food items of the meal
+     *
+     * @return unmodifiable list of the food items in the order they were added
+     */
+    public List<FoodItem> getFoodItems() {
+        return Collections.unmodifiableList(foodItems);
+    }
+
+
+    /**
+     * Gets the number of food items in the meal
+     *
+     * @return number of food items, counting a food item added twice twice
+     */
+    public int size() {
+        return foodItems.size();
+    }
+
+
+    /**
+     * Gets the total of a nutrient over the meal
+     *
+     * @param nutrient name of the nutrient, one of FoodData.NUTRIENTS
+     * @return the total, 0 for an empty meal
+     * @throws IllegalArgumentException if the meal keeps no total of the nutrient
+     */
+    public double getTotal(String nutrient) {
+        for (int i = 0; i < FoodData.NUTRIENTS.length; i++) {
+            if (FoodData.NUTRIENTS[i].equals(nutrient)) {
+                return totals[i];
+            }
+        }
+        throw new IllegalArgumentException("No total of nutrient: " + nutrient);
+    }
+
+} // End Meal class
@@ -0,0 +1,228 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filename: NameIndex.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Queries shorter than a trigram can not use the postings, FoodData scans
+ * the lower case names for those
+ *
+ * This class is a trigram index of the food names for substring searches. Every name is lower
+ * cased once when it is added, and each run of three characters in it (a trigram) has a posting
+ * list, a CompressedBitmap of the ordinals of the names containing it. A name containing the
+ * query contains every trigram of the query, so intersecting the postings of the query's
+ * trigrams leaves a few candidates, and only those are checked against the whole query.
+ *
+ */
+class NameIndex {
+
+    // Number of characters in a gram
+    static final int GRAM = 3;
+
+    // Lower case name of each food item, by ordinal
+    private final List<String> lowerCaseNames;
+
+    // Packed trigrams in an open addressing table, EMPTY marks a free slot
+    private long[] trigrams;
+
+    // Ordinals of the names containing each trigram, postings[i] belongs to trigrams[i]
+    private CompressedBitmap[] postings;
+
+    // Number of trigrams in the table
+    private int size;
+
+    // Marks a free slot, no three chars pack to it since a char has only 16 bits
+    private static final long EMPTY = -1L;
+
+    /**
+     * Builds the index of a list of food items
+     *
+     * @param foodItems food items, the food item at position i has ordinal i
+     */
+    NameIndex(List<FoodItem> foodItems) {
+        lowerCaseNames = new ArrayList<String>(foodItems.size());
+        trigrams = new long[1024];
+        Arrays.fill(trigrams, EMPTY);
+        postings = new CompressedBitmap[1024];
+        for (FoodItem food : foodItems) {
+            add(food.getName());
+        }
+    }
+
+
+    /**
+     * Adds the name of the food item with the next ordinal
+     *
+     * @param name name of the food item
+     */
+    void add(String name) {
+        int ordinal = lowerCaseNames.size();
+        String lowerCase = name.toLowerCase();
+        lowerCaseNames.add(lowerCase);
+        for (int i = 0; i + GRAM <= lowerCase.length(); i++) {
+            int slot = slot(trigram(lowerCase, i));
+            if (postings[slot] == null) {
+                trigrams[slot] = trigram(lowerCase, i);
+                postings[slot] = new CompressedBitmap();
+                if (++size * 2 > trigrams.length) {// keep the table at most half full
+                    grow();
+                    slot = slot(trigram(lowerCase, i));
+                }
+            }
+            postings[slot].add(ordinal);// repeated trigrams of one name are ignored by the bitmap
+        }
+    }
+
+
+    /**
+     * Removes the name of a food item. The name with the last ordinal takes its ordinal, the
+     * same way FoodData gives the ordinal of a removed food item to the last food item.
+     *
+     * @param ordinal ordinal of the food item
+     */
+    void remove(int ordinal) {
+        int last = lowerCaseNames.size() - 1;
+        String removed = lowerCaseNames.get(ordinal);
+        for (int i = 0; i + GRAM <= removed.length(); i++) {
+            removePosting(trigram(removed, i), ordinal);
+        }
+        if (ordinal != last) {
+            String moved = lowerCaseNames.get(last);
+            for (int i = 0; i + GRAM <= moved.length(); i++) {
+                CompressedBitmap posting = postings[slot(trigram(moved, i))];
+                posting.remove(last);
+                posting.add(ordinal);
+            }
+            lowerCaseNames.set(ordinal, moved);
+        }
+        lowerCaseNames.remove(last);
+    }
+
+
+    /**
+     * Gets the lower case name of a food item
+     *
+     * @param ordinal ordinal of the food item
+     * @return the name in lower case
+     */
+    String lowerCaseName(int ordinal) {
+        return lowerCaseNames.get(ordinal);
+    }
+
+
+    /**
+     * Finds the food items whose name contains a substring of at least GRAM characters
+     *
+     * @param lowerCase the substring in lower case
+     * @return ordinals of the matching food items in ascending order
+     * @throws IllegalArgumentException if the substring is shorter than GRAM
+     */
+    int[] search(String lowerCase) {
+        CompressedBitmap candidates = candidates(lowerCase);
+
+        // the trigrams can be in a different order in the name, so check the whole substring
+        int[] found = new int[candidates.cardinality()];
+        int[] count = new int[1];
+        candidates.forEach(ordinal -> {
+            if (lowerCaseNames.get(ordinal).contains(lowerCase)) {
+                found[count[0]++] = ordinal;
+            }
+        });
+        return Arrays.copyOf(found, count[0]);
+    }
+
+
+    /**
+     * Finds the food items whose name holds every trigram of a substring. Every name containing
+     * the substring is among them, but a name can hold the trigrams in another order, so each
+     * candidate still has to be checked against the whole substring.
+     *
+     * @param lowerCase the substring in lower case
+     * @return ordinals of the candidates, not to be changed
+     * @throws IllegalArgumentException if the substring is shorter than GRAM
+     */
+    CompressedBitmap candidates(String lowerCase) {
+        if (lowerCase.length() < GRAM) {
+            throw new IllegalArgumentException("Too short for the trigram index: " + lowerCase);
+        }
+        // intersect the postings from the rarest up, so the candidates shrink fastest
+        CompressedBitmap[] lists = new CompressedBitmap[lowerCase.length() - GRAM + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings[slot(trigram(lowerCase, i))];
+            if (lists[i] == null || lists[i].isEmpty()) {
+                return new CompressedBitmap();// no name has this trigram
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        CompressedBitmap candidates = lists[0];
+        for (int i = 1; i < lists.length && !candidates.isEmpty(); i++) {
+            if (lists[i] != lists[i - 1]) {// a repeated trigram adds nothing
+                candidates = candidates.and(lists[i]);
+            }
+        }
+        return candidates;
+    }
+
+
+    /*
+     * Helper method to remove an ordinal from a posting. An empty posting keeps its slot, so the
+     * probe sequences of the other trigrams are not broken, and a search for it finds nothing.
+     */
+    private void removePosting(long trigram, int ordinal) {
+        CompressedBitmap posting = postings[slot(trigram)];
+        if (posting != null) {
+            posting.remove(ordinal);
+        }
+    }
+
+
+    /*
+     * Helper method to find the slot of a trigram, or the free slot where it would go
+     */
+    private int slot(long trigram) {
+        int mask = trigrams.length - 1;
+        int slot = (int) ((trigram * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (trigrams[slot] != EMPTY && trigrams[slot] != trigram) {
+            slot = (slot + 1) & mask;// linear probing
+        }
+        return slot;
+    }
+
+
+    /*
+     * Helper method to double the table and put every trigram back into it
+     */
+    private void grow() {
+        long[] oldTrigrams = trigrams;
+        CompressedBitmap[] oldPostings = postings;
+        trigrams = new long[oldTrigrams.length * 2];
+        Arrays.fill(trigrams, EMPTY);
+        postings = new CompressedBitmap[oldPostings.length * 2];
+        for (int i = 0; i < oldTrigrams.length; i++) {
+            if (oldPostings[i] != null) {
+                int slot = slot(oldTrigrams[i]);
+                trigrams[slot] = oldTrigrams[i];
+                postings[slot] = oldPostings[i];
+            }
+        }
+    }
+
+
+    /*
+     * Helper method to pack the three characters starting at a position into one key
+     */
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16)
+            | text.charAt(i + 2);
+    }
+
+} // End NameIndex class
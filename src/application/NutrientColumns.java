@@ -0,0 +1,159 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Filename: NutrientColumns.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Changes are not synchronized, FoodData makes them with its write lock
+ * held
+ *
+ * This class stores the nutrient values of the food items of a FoodData as columns, one double[]
+ * per nutrient of FoodData.NUTRIENTS indexed by ordinal. A food item added to a FoodData keeps no
+ * values of its own, it reads its row here, so a food item costs a few fields instead of a
+ * HashMap with five boxed values, and a walk over one nutrient of every food item reads one
+ * array from start to end.
+ *
+ */
+class NutrientColumns {
+
+    // columns[n][i] is the value of FoodData.NUTRIENTS[n] for the food item with ordinal i,
+    // only the first size entries are in use
+    private final double[][] columns;
+
+    // Number of rows in use
+    private int size;
+
+    /**
+     * Builds empty columns
+     */
+    NutrientColumns() {
+        this(new double[FoodData.NUTRIENTS.length][16], 0);
+    }
+
+
+    /**
+     * Builds columns from arrays that are already filled, e.g. by the loader. The arrays are
+     * used as they are, not copied.
+     *
+     * @param columns one array per nutrient of FoodData.NUTRIENTS
+     * @param size number of rows in use
+     */
+    NutrientColumns(double[][] columns, int size) {
+        this.columns = columns;
+        this.size = size;
+    }
+
+
+    /**
+     * Gets the column of a nutrient
+     *
+     * @param nutrient name of the nutrient, as in FoodData.NUTRIENTS
+     * @return the position of its column, -1 if there is no column for it
+     */
+    static int column(String nutrient) {
+        for (int n = 0; n < FoodData.NUTRIENTS.length; n++) {
+            if (FoodData.NUTRIENTS[n].equals(nutrient)) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets a value
+     *
+     * @param n position of the nutrient's column
+     * @param ordinal ordinal of the food item
+     * @return the value
+     */
+    double get(int n, int ordinal) {
+        return columns[n][ordinal];
+    }
+
+
+    /**
+     * Changes a value
+     *
+     * @param n position of the nutrient's column
+     * @param ordinal ordinal of the food item
+     * @param value the new value
+     */
+    void set(int n, int ordinal, double value) {
+        columns[n][ordinal] = value;
+    }
+
+
+    /**
+     * Gets the array of a column to walk it, only the first size() entries are in use. The
+     * array is replaced when the columns grow, so it is not kept.
+     *
+     * @param n position of the nutrient's column
+     * @return the array backing the column
+     */
+    double[] values(int n) {
+        return columns[n];
+    }
+
+
+    /**
+     * Copies the rows in use of a column
+     *
+     * @param n position of the nutrient's column
+     * @return a new array of size() values in ordinal order
+     */
+    double[] copy(int n) {
+        return Arrays.copyOf(columns[n], size);
+    }
+
+
+    /**
+     * Gets the number of rows in use
+     *
+     * @return number of rows
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Adds a row for a food item with the next ordinal, with the values it has now
+     *
+     * @param food the food item, not yet reading its row here
+     * @return ordinal of the new row
+     */
+    int append(FoodItem food) {
+        if (size == columns[0].length) {
+            for (int n = 0; n < columns.length; n++) {
+                columns[n] = Arrays.copyOf(columns[n], Math.max(16, size + (size >> 1)));
+            }
+        }
+        for (int n = 0; n < columns.length; n++) {
+            columns[n][size] = food.getNutrientValue(FoodData.NUTRIENTS[n]);
+        }
+        return size++;
+    }
+
+
+    /**
+     * Removes the last row after copying it into the row of a removed food item, the same way
+     * FoodData gives the ordinal of a removed food item to the last food item
+     *
+     * @param ordinal ordinal of the removed food item
+     */
+    void removeRow(int ordinal) {
+        size--;
+        for (int n = 0; n < columns.length; n++) {
+            columns[n][ordinal] = columns[n][size];
+        }
+    }
+
+} // End NutrientColumns class
@@ -0,0 +1,163 @@
+package application;
+
+import java.util.Random;
+
+/**
+ * Filename: NutrientColumnsBenchmark.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Heap sizes are measured after System.gc() and are only estimates. Run with
+ * a large heap, e.g. java -Xmx4g application.NutrientColumnsBenchmark 1000000 foods.csv
+ *
+ * This class compares food items keeping their own nutrient values in a HashMap, as every food
+ * item did before NutrientColumns, with food items reading a row of the columns: the heap each
+ * takes and the time to walk one nutrient of every food item
+ *
+ */
+public class NutrientColumnsBenchmark {
+
+    // Number of times each walk is repeated, the best run is reported
+    private static final int RUNS = 5;
+
+    /*
+     * Helper method to make food items that keep their own values, the way a food item is
+     * before it is added to a FoodData. Every food item shares one id and name so only the
+     * nutrients are measured.
+     *
+     * @param rows number of food items
+     * @return the food items
+     */
+    static FoodItem[] ownValues(int rows) {
+        Random rnd = new Random(42);
+        FoodItem[] foodItems = new FoodItem[rows];
+        for (int i = 0; i < rows; i++) {
+            foodItems[i] = new FoodItem("id", "name");
+            for (String nutrient : FoodData.NUTRIENTS) {
+                foodItems[i].addNutrient(nutrient, rnd.nextInt(900));
+            }
+        }
+        return foodItems;
+    } // End ownValues()
+
+
+    /*
+     * Helper method to make food items over columns, the way a FoodData keeps them
+     *
+     * @param rows number of food items
+     * @param columns receives the rows
+     * @return the food items
+     */
+    static FoodItem[] overColumns(int rows, NutrientColumns columns) {
+        Random rnd = new Random(42);
+        FoodItem[] foodItems = new FoodItem[rows];
+        for (int i = 0; i < rows; i++) {
+            foodItems[i] = new FoodItem("id", "name");
+            foodItems[i].attach(columns, columns.append(foodItems[i]));
+            for (String nutrient : FoodData.NUTRIENTS) {
+                foodItems[i].addNutrient(nutrient, rnd.nextInt(900));
+            }
+        }
+        return foodItems;
+    } // End overColumns()
+
+
+    /*
+     * Helper method to add up one nutrient of every food item through getNutrientValue
+     *
+     * @param foodItems the food items
+     * @return the total
+     */
+    static double total(FoodItem[] foodItems) {
+        double total = 0;
+        for (FoodItem food : foodItems) {
+            total += food.getNutrientValue("protein");
+        }
+        return total;
+    } // End total()
+
+
+    /*
+     * Compares the heap of the two layouts and the time to add up one nutrient of every food
+     * item in each
+     *
+     * @param rows number of food items
+     */
+    static void ownValuesVersusColumns(int rows) {
+        long before = BPTreeBenchmark.usedHeap();
+        FoodItem[] own = ownValues(rows);
+        long ownBytes = BPTreeBenchmark.usedHeap() - before;
+
+        before = BPTreeBenchmark.usedHeap();
+        NutrientColumns columns = new NutrientColumns();
+        FoodItem[] viewed = overColumns(rows, columns);
+        long columnBytes = BPTreeBenchmark.usedHeap() - before;
+
+        int protein = NutrientColumns.column("protein");
+        long bestOwn = Long.MAX_VALUE;
+        long bestViewed = Long.MAX_VALUE;
+        long bestColumn = Long.MAX_VALUE;
+        double difference = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            double ownTotal = total(own);
+            bestOwn = Math.min(bestOwn, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            double viewedTotal = total(viewed);
+            bestViewed = Math.min(bestViewed, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            double columnTotal = 0;
+            double[] column = columns.values(protein);
+            for (int i = 0; i < columns.size(); i++) {
+                columnTotal += column[i];
+            }
+            bestColumn = Math.min(bestColumn, System.nanoTime() - start);
+            difference += Math.abs(ownTotal - viewedTotal) + Math.abs(ownTotal - columnTotal);
+        }
+        if (difference != 0) {
+            throw new IllegalStateException("The layouts hold different values");
+        }
+        System.out.printf("%nOwn HashMap %8.1f bytes per food item, columns %8.1f bytes per food"
+            + " item%n", ownBytes / (double) rows, columnBytes / (double) rows);
+        BPTreeBenchmark.report("total of own HashMaps", bestOwn);
+        BPTreeBenchmark.report("total through the columns", bestViewed);
+        BPTreeBenchmark.report("total of the column array", bestColumn);
+    } // End ownValuesVersusColumns()
+
+
+    /*
+     * Measures the heap a loaded FoodData takes for each food item, with its names and indexes
+     *
+     * @param filePath food item file to load
+     */
+    static void loadedFoodData(String filePath) {
+        long before = BPTreeBenchmark.usedHeap();
+        FoodData foodData = new FoodData();
+        foodData.loadFoodItems(filePath);
+        long bytes = BPTreeBenchmark.usedHeap() - before;
+        int rows = foodData.getAllFoodItems().size();
+        System.out.printf("%nFoodData of %d food items %8.1f bytes per food item%n", rows,
+            bytes / (double) Math.max(1, rows));
+    } // End loadedFoodData()
+
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args optional number of rows, defaults to 1,000,000, and a food item file to load
+     */
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ownValuesVersusColumns(rows);
+        if (args.length > 1) {
+            loadedFoodData(args[1]);
+        }
+    }
+
+} // End NutrientColumnsBenchmark class
@@ -0,0 +1,127 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filename: NutrientQuery.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: No known bugs
+ *
+ * This class represents the plan for a conjunctive nutrient query. The range expected to match
+ * the fewest food items drives the query through its index, and every other range is either
+ * checked directly on the food items the index finds or intersected with it as a bitmap of
+ * ordinals, whichever is estimated to be cheaper.
+ *
+ */
+class NutrientQuery {
+
+    // Relative cost of checking one range on one food item found by the driver
+    private static final double CHECK_COST = 4.0;
+
+    // Relative cost of scanning one index entry into a bitmap
+    private static final double SCAN_COST = 1.0;
+
+    // Range whose index is searched
+    final NutrientRange driver;
+
+    // Ranges checked on each food item found by the driver, most selective first
+    final List<NutrientRange> residuals;
+
+    // Estimated number of food items found by the driver
+    final double estimatedRows;
+
+    // True if every range's index is searched into a bitmap and the bitmaps are intersected,
+    // false if the residuals are checked on the food items found by the driver
+    final boolean useBitmaps;
+
+    /**
+     * Constructor
+     *
+     * @param driver range whose index is searched
+     * @param residuals ranges checked on each food item found by the driver
+     * @param estimatedRows estimated number of food items found by the driver
+     * @param useBitmaps if the residuals are searched and intersected as bitmaps
+     */
+    private NutrientQuery(NutrientRange driver, List<NutrientRange> residuals,
+        double estimatedRows, boolean useBitmaps) {
+        this.driver = driver;
+        this.residuals = residuals;
+        this.estimatedRows = estimatedRows;
+        this.useBitmaps = useBitmaps;
+    }
+
+
+    /**
+     * Plans a query over merged ranges. The range with the smallest estimated number of matches
+     * is the driver. The other ranges are either checked on each food item the driver finds, or,
+     * when the driver finds so many that checking them would cost more than scanning the other
+     * indexes, each range is searched into a bitmap and the bitmaps are intersected.
+     *
+     * @param ranges the ranges of the query, at most one per nutrient
+     * @param statistics statistics of each nutrient's index
+     * @return the plan
+     * @throws IllegalArgumentException if there are no ranges
+     */
+    static NutrientQuery plan(Collection<NutrientRange> ranges,
+        Map<String, IndexStatistics> statistics) {
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("A query needs at least one range");
+        }
+        List<NutrientRange> ordered = new ArrayList<NutrientRange>(ranges);
+        Map<NutrientRange, Double> estimates = new HashMap<NutrientRange, Double>();
+        for (NutrientRange range : ordered) {
+            estimates.put(range, statistics.get(range.nutrient).estimate(range));
+        }
+        ordered.sort((range1, range2) -> Double.compare(estimates.get(range1),
+            estimates.get(range2))); // most selective first
+
+        NutrientRange driver = ordered.remove(0);
+        double driverRows = estimates.get(driver);
+        double checkCost = driverRows * ordered.size() * CHECK_COST;
+        double scanCost = 0;
+        for (NutrientRange range : ordered) {
+            scanCost += estimates.get(range) * SCAN_COST;
+        }
+        return new NutrientQuery(driver, ordered, driverRows,
+            !ordered.isEmpty() && scanCost < checkCost);
+    } // End plan()
+
+
+    /**
+     * Checks if a food item found by the driver satisfies every other range
+     *
+     * @param food the food item
+     * @return true if the food item is in every residual range
+     */
+    boolean matchesResiduals(FoodItem food) {
+        for (NutrientRange range : residuals) {
+            if (!range.contains(food.getNutrientValue(range.nutrient))) {
+                return false;
+            }
+        }
+        return true;
+    } // End matchesResiduals()
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "scan " + driver + " (~" + Math.round(estimatedRows) + " rows), "
+            + (useBitmaps ? "intersect bitmaps of " : "check ") + residuals;
+    }
+
+} // End NutrientQuery class
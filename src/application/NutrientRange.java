@@ -0,0 +1,198 @@
+package application;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+/**
+ * Filename: NutrientRange.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: No known bugs
+ *
+ * This class represents the range of values one nutrient is allowed to have, made from one or
+ * more "<nutrient> <comparator> <value>" rules. Rules on the same nutrient are merged into one
+ * range so each nutrient index only has to be searched once.
+ *
+ */
+class NutrientRange {
+
+    // Name of the nutrient, lower case
+    final String nutrient;
+
+    // Lower bound of the range, negative infinity if there is none
+    final double low;
+
+    // If values equal to low are in the range
+    final boolean lowInclusive;
+
+    // Upper bound of the range, positive infinity if there is none
+    final double high;
+
+    // If values equal to high are in the range
+    final boolean highInclusive;
+
+    /**
+     * Constructor
+     *
+     * @param nutrient name of the nutrient
+     * @param low lower bound of the range
+     * @param lowInclusive if values equal to low are in the range
+     * @param high upper bound of the range
+     * @param highInclusive if values equal to high are in the range
+     */
+    NutrientRange(String nutrient, double low, boolean lowInclusive, double high,
+        boolean highInclusive) {
+        this.nutrient = nutrient;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.high = high;
+        this.highInclusive = highInclusive;
+    }
+
+
+    /**
+     * Parses a rule of the form "<nutrient> <comparator> <value>"
+     *
+     * @param rule the rule, the nutrient is case-insensitive
+     * @return the range of values allowed by the rule
+     * @throws IllegalArgumentException if the rule is not in the required form
+     */
+    static NutrientRange parse(String rule) {
+        String[] parts = rule == null ? new String[0] : rule.trim().split("\\s+");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Rule is not <nutrient> <comparator> <value>: "
+                + rule);
+        }
+        String nutrient = FoodData.nutrientName(parts[0]);
+        double value = Double.parseDouble(parts[2]);
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Rule value is not a number: " + rule);
+        }
+        switch (parts[1]) {
+            case ">=":
+                return new NutrientRange(nutrient, value, true, Double.POSITIVE_INFINITY, true);
+            case "<=":
+                return new NutrientRange(nutrient, Double.NEGATIVE_INFINITY, true, value, true);
+            case "==":
+                return new NutrientRange(nutrient, value, true, value, true);
+            default:
+                throw new IllegalArgumentException("Unknown comparator in rule: " + rule);
+        }
+    } // End parse()
+
+
+    /**
+     * Parses every rule and merges the rules on the same nutrient into one range
+     *
+     * @param rules list of rules
+     * @return map of nutrient to its range, in the order the nutrients first appear
+     * @throws IllegalArgumentException if a rule is not in the required form
+     */
+    static Map<String, NutrientRange> parseAll(List<String> rules) {
+        Map<String, NutrientRange> ranges = new LinkedHashMap<String, NutrientRange>();
+        for (String rule : rules) {
+            NutrientRange range = parse(rule);
+            NutrientRange other = ranges.get(range.nutrient);
+            ranges.put(range.nutrient, other == null ? range : other.intersect(range));
+        }
+        return ranges;
+    } // End parseAll()
+
+
+    /**
+     * Gets the range allowed by both this range and another range of the same nutrient
+     *
+     * @param other range of the same nutrient
+     * @return the intersection of both ranges
+     */
+    NutrientRange intersect(NutrientRange other) {
+        double newLow = low;
+        boolean newLowInclusive = lowInclusive;
+        if (other.low > low || (other.low == low && !other.lowInclusive)) {
+            newLow = other.low;
+            newLowInclusive = other.lowInclusive;
+        }
+        double newHigh = high;
+        boolean newHighInclusive = highInclusive;
+        if (other.high < high || (other.high == high && !other.highInclusive)) {
+            newHigh = other.high;
+            newHighInclusive = other.highInclusive;
+        }
+        return new NutrientRange(nutrient, newLow, newLowInclusive, newHigh, newHighInclusive);
+    } // End intersect()
+
+
+    /**
+     * Checks if no value can be in the range
+     *
+     * @return true if the range is empty
+     */
+    boolean isEmpty() {
+        return low > high || (low == high && !(lowInclusive && highInclusive));
+    } // End isEmpty()
+
+
+    /**
+     * Checks if a value is in the range
+     *
+     * @param value value of the nutrient
+     * @return true if the value is in the range
+     */
+    boolean contains(double value) {
+        return (value > low || (lowInclusive && value == low))
+            && (value < high || (highInclusive && value == high));
+    } // End contains()
+
+
+    /**
+     * Searches a nutrient index for the ordinals of the food items in the range
+     *
+     * @param index index of this range's nutrient
+     * @return ordinals in ascending order of the nutrient's value
+     */
+    int[] search(DoubleIndex index) {
+        return index.rangeSearchValues(low, lowInclusive, high, highInclusive);
+    } // End search()
+
+
+    /**
+     * Walks a nutrient index lazily over the ordinals of the food items in the range
+     *
+     * @param index index of this range's nutrient
+     * @return iterator over the ordinals in ascending order of the nutrient's value
+     */
+    PrimitiveIterator.OfInt iterator(DoubleIndex index) {
+        return index.rangeIterator(low, lowInclusive, high, highInclusive);
+    } // End iterator()
+
+
+    /**
+     * Searches a nutrient index for the ordinals of the food items in the range
+     *
+     * @param index index of this range's nutrient
+     * @return bitmap of the ordinals
+     */
+    CompressedBitmap searchBitmap(DoubleIndex index) {
+        return index.rangeSearchBitmap(low, lowInclusive, high, highInclusive);
+    } // End searchBitmap()
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return nutrient + " in " + (lowInclusive ? "[" : "(") + low + ", " + high
+            + (highInclusive ? "]" : ")");
+    }
+
+} // End NutrientRange class
@@ -0,0 +1,215 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Filename: PrefixIndex.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: Food items with the same lower case name are kept in the order of their
+ * names, so "Apple" comes before "apple", and in no particular order after that
+ *
+ * This class is a prefix index of the food names for type-ahead. The food items are kept in an
+ * array sorted by lower case name, so the names starting with a prefix are next to each other.
+ * A binary search finds the first of them and the first few are read from there, in
+ * O(log n + limit) no matter how many food items are loaded. The lower case names are the ones
+ * the NameIndex already keeps, so they are not lower cased or stored again.
+ *
+ */
+class PrefixIndex {
+
+    // Lower case names of the food items, used to order them
+    private final NameIndex names;
+
+    // Food items sorted by lower case name
+    private FoodItem[] foodItems;
+
+    // Lower case name of each food item, lowerCaseNames[i] belongs to foodItems[i]
+    private String[] lowerCaseNames;
+
+    // Number of food items in the index
+    private int size;
+
+    /**
+     * Builds the index of a list of food items. The sort is a merge sort that finds runs already
+     * in order, so it is close to linear when the food items are already sorted by name.
+     *
+     * @param foodItems food items in any order
+     * @param names lower case names of the same food items
+     */
+    PrefixIndex(List<FoodItem> foodItems, NameIndex names) {
+        this.names = names;
+        this.foodItems = foodItems.toArray(new FoodItem[Math.max(16, foodItems.size())]);
+        size = foodItems.size();
+        Arrays.sort(this.foodItems, 0, size, order());
+        lowerCaseNames = new String[this.foodItems.length];
+        for (int i = 0; i < size; i++) {
+            lowerCaseNames[i] = names.lowerCaseName(this.foodItems[i].getOrdinal());
+        }
+    }
+
+
+    /**
+     * Adds a food item, after its name was added to the NameIndex. The later food items are
+     * shifted by one, O(n) but only an array copy.
+     *
+     * @param food the food item
+     */
+    void add(FoodItem food) {
+        if (size == foodItems.length) {
+            grow(size + 1);
+        }
+        String lowerCase = names.lowerCaseName(food.getOrdinal());
+        int position = position(lowerCase, food.getName());
+        System.arraycopy(foodItems, position, foodItems, position + 1, size - position);
+        System.arraycopy(lowerCaseNames, position, lowerCaseNames, position + 1, size - position);
+        foodItems[position] = food;
+        lowerCaseNames[position] = lowerCase;
+        size++;
+    }
+
+
+    /**
+     * Adds many food items, after their names were added to the NameIndex. They are sorted and
+     * merged with the food items already in the index in one pass from the back.
+     *
+     * @param added the food items
+     */
+    void addAll(FoodItem[] added) {
+        FoodItem[] sorted = added.clone();
+        Arrays.sort(sorted, order());
+        if (size + sorted.length > foodItems.length) {
+            grow(size + sorted.length);
+        }
+        // fill from the back so no food item is overwritten before it is moved
+        int old = size - 1;
+        int next = sorted.length - 1;
+        for (int i = size + sorted.length - 1; next >= 0; i--) {
+            String lowerCase = names.lowerCaseName(sorted[next].getOrdinal());
+            if (old >= 0 && compare(lowerCaseNames[old], foodItems[old].getName(), lowerCase,
+                sorted[next].getName()) > 0) {
+                foodItems[i] = foodItems[old];
+                lowerCaseNames[i] = lowerCaseNames[old--];
+            } else {
+                foodItems[i] = sorted[next--];
+                lowerCaseNames[i] = lowerCase;
+            }
+        }
+        size += sorted.length;
+    }
+
+
+    /**
+     * Removes a food item, before its name is removed from the NameIndex
+     *
+     * @param food the food item
+     */
+    void remove(FoodItem food) {
+        // food items with the same lower case name are next to each other, find this one
+        int low = lowerBound(names.lowerCaseName(food.getOrdinal()));
+        for (int i = low; i < size; i++) {
+            if (foodItems[i] == food) {
+                System.arraycopy(foodItems, i + 1, foodItems, i, size - i - 1);
+                System.arraycopy(lowerCaseNames, i + 1, lowerCaseNames, i, size - i - 1);
+                size--;
+                foodItems[size] = null;
+                lowerCaseNames[size] = null;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the first food items, by lower case name, whose name starts with a prefix
+     *
+     * @param lowerCase the prefix in lower case
+     * @param limit maximum number of food items to return
+     * @return list of at most limit food items sorted by lower case name
+     */
+    List<FoodItem> complete(String lowerCase, int limit) {
+        ArrayList<FoodItem> found = new ArrayList<FoodItem>(Math.min(limit, 64));
+        for (int i = lowerBound(lowerCase); i < size && found.size() < limit
+            && lowerCaseNames[i].startsWith(lowerCase); i++) {
+            found.add(foodItems[i]);
+        }
+        return found;
+    }
+
+
+    /*
+     * Helper method to find the first position whose lower case name is not less than a string
+     */
+    private int lowerBound(String lowerCase) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lowerCaseNames[middle].compareTo(lowerCase) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to find the position a new food item goes, after any equal names
+     */
+    private int position(String lowerCase, String name) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(lowerCaseNames[middle], foodItems[middle].getName(), lowerCase,
+                name) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Helper method to make room for at least a number of food items
+     */
+    private void grow(int capacity) {
+        int length = Math.max(capacity, foodItems.length + (foodItems.length >> 1));
+        foodItems = Arrays.copyOf(foodItems, length);
+        lowerCaseNames = Arrays.copyOf(lowerCaseNames, length);
+    }
+
+
+    /*
+     * Helper method to get the order of the index for food items whose names are in the
+     * NameIndex
+     */
+    private Comparator<FoodItem> order() {
+        return (FoodItem food1, FoodItem food2) -> compare(
+            names.lowerCaseName(food1.getOrdinal()), food1.getName(),
+            names.lowerCaseName(food2.getOrdinal()), food2.getName());
+    }
+
+
+    /*
+     * Helper method to compare two food names by lower case name, then by name
+     */
+    private static int compare(String lowerCase1, String name1, String lowerCase2,
+        String name2) {
+        int comparison = lowerCase1.compareTo(lowerCase2);
+        return comparison != 0 ? comparison : name1.compareTo(name2);
+    }
+
+} // End PrefixIndex class
@@ -0,0 +1,314 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Filename: QueryCache.java
+ *
+ * Project: p5
+ *
+ * Course: cs400
+ *
+ * Authors: Jason Carrington, Sarah Ostermeier, Cristian Espinoza, Brian O'Loughlin
+ *
+ * Bugs or other notes: A result larger than the whole budget of food items is not cached
+ *
+ * This class is a least recently used cache of query results. A nutrient query is keyed by its
+ * merged ranges in nutrient order, so "fat <= 5, calories >= 50" and "calories >= 50, fat <= 5,
+ * fat <= 9" share one entry, and a name query by its lower case substring. The cache is bounded
+ * both by its number of entries and by the number of food items in all its results, and the
+ * least recently used entries are dropped first.
+ *
+ * Each entry keeps its query, so a change to the data only drops the entries it can change: a
+ * food item that is added or removed only changes the results whose query it matches, and a
+ * changed nutrient only changes the results of queries with a range on that nutrient.
+ *
+ * The methods are synchronized, since FoodData runs many queries at once.
+ *
+ */
+class QueryCache {
+
+    /*
+     * A cached result with the query it answers
+     */
+    private static class Entry {
+
+        // Ranges of a nutrient query, null for a name query
+        final Collection<NutrientRange> ranges;
+
+        // Lower case substring of a name query, null for a nutrient query
+        final String substring;
+
+        // The result, in the order it was returned
+        final FoodItem[] results;
+
+        Entry(Collection<NutrientRange> ranges, String substring, FoodItem[] results) {
+            this.ranges = ranges;
+            this.substring = substring;
+            this.results = results;
+        }
+
+        /*
+         * Checks if a food item is in the result of this entry's query
+         */
+        boolean matches(FoodItem food, String lowerCaseName) {
+            if (substring != null) {
+                return lowerCaseName.contains(substring);
+            }
+            for (NutrientRange range : ranges) {
+                if (!range.contains(food.getNutrientValue(range.nutrient))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Checks if this entry's query has a range on a nutrient
+         */
+        boolean uses(String nutrient) {
+            if (ranges == null) {
+                return false;
+            }
+            for (NutrientRange range : ranges) {
+                if (range.nutrient.equals(nutrient)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Entries by query key, from the least to the most recently used
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Most entries kept
+    private int maxEntries;
+
+    // Most food items kept in all the results together
+    private long maxFoodItems;
+
+    // Food items in all the results together
+    private long cachedFoodItems;
+
+    // Number of queries answered from the cache
+    private long hits;
+
+    // Number of queries that had to be run
+    private long misses;
+
+    /**
+     * Builds an empty cache
+     *
+     * @param maxEntries most entries kept
+     * @param maxFoodItems most food items kept in all the results together
+     */
+    QueryCache(int maxEntries, long maxFoodItems) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);// access order
+        setLimits(maxEntries, maxFoodItems);
+    }
+
+
+    /**
+     * Changes the bounds of the cache, dropping the least recently used entries over them
+     *
+     * @param maxEntries most entries kept, 0 turns the cache off
+     * @param maxFoodItems most food items kept in all the results together
+     * @throws IllegalArgumentException if a bound is negative
+     */
+    synchronized void setLimits(int maxEntries, long maxFoodItems) {
+        if (maxEntries < 0 || maxFoodItems < 0) {
+            throw new IllegalArgumentException(
+                "Illegal cache limits: " + maxEntries + " entries, " + maxFoodItems + " food items");
+        }
+        this.maxEntries = maxEntries;
+        this.maxFoodItems = maxFoodItems;
+        evict();
+    }
+
+
+    /**
+     * Gets the key of a nutrient query
+     *
+     * @param ranges merged ranges of the query, one per nutrient
+     * @return the key, the same for every order of the ranges
+     */
+    static String nutrientKey(Collection<NutrientRange> ranges) {
+        TreeMap<String, NutrientRange> sorted = new TreeMap<String, NutrientRange>();
+        for (NutrientRange range : ranges) {
+            sorted.put(range.nutrient, range);
+        }
+        StringBuilder key = new StringBuilder();
+        for (NutrientRange range : sorted.values()) {
+            key.append(range).append(';');// "calories in [50.0, 200.0];"
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * Gets the key of a name query
+     *
+     * @param lowerCase lower case substring of the query
+     * @return the key
+     */
+    static String nameKey(String lowerCase) {
+        return "name contains " + lowerCase;// no nutrient key starts this way
+    }
+
+
+    /**
+     * Gets a cached result, counting a hit or a miss
+     *
+     * @param key key of the query
+     * @return a copy of the result, or null if it is not cached
+     */
+    synchronized List<FoodItem> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<FoodItem>(Arrays.asList(entry.results));
+    }
+
+
+    /**
+     * Caches the result of a nutrient query
+     *
+     * @param key key of the query
+     * @param ranges merged ranges of the query
+     * @param results the result
+     */
+    synchronized void putNutrientQuery(String key, Collection<NutrientRange> ranges,
+        List<FoodItem> results) {
+        put(key, new Entry(new ArrayList<NutrientRange>(ranges), null,
+            results.toArray(new FoodItem[0])));
+    }
+
+
+    /**
+     * Caches the result of a name query
+     *
+     * @param key key of the query
+     * @param lowerCase lower case substring of the query
+     * @param results the result
+     */
+    synchronized void putNameQuery(String key, String lowerCase, List<FoodItem> results) {
+        put(key, new Entry(null, lowerCase, results.toArray(new FoodItem[0])));
+    }
+
+
+    /**
+     * Drops the entries whose result a food item is in, or would be in, e.g. when it is added
+     * or removed
+     *
+     * @param food the food item
+     * @param lowerCaseName lower case name of the food item
+     */
+    synchronized void invalidate(FoodItem food, String lowerCaseName) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.matches(food, lowerCaseName)) {
+                cachedFoodItems -= entry.results.length;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Drops the entries of the queries with a range on a nutrient, e.g. when a value of that
+     * nutrient changes
+     *
+     * @param nutrient name of the nutrient, lower case
+     */
+    synchronized void invalidateNutrient(String nutrient) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.uses(nutrient)) {
+                cachedFoodItems -= entry.results.length;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Drops every entry, e.g. when other food items are loaded. The counters are kept.
+     */
+    synchronized void clear() {
+        entries.clear();
+        cachedFoodItems = 0;
+    }
+
+
+    /**
+     * Checks if the cache has no entries, so there is nothing to invalidate
+     *
+     * @return true if no result is cached
+     */
+    synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+
+    /**
+     * Gets the number of queries answered from the cache
+     *
+     * @return number of hits
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+
+    /**
+     * Gets the number of queries that were not cached
+     *
+     * @return number of misses
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+
+    /*
+     * Helper method to add an entry and drop the least recently used ones over the bounds
+     */
+    private void put(String key, Entry entry) {
+        if (entry.results.length > maxFoodItems || maxEntries == 0) {
+            return;// would push out everything else, or the cache is off
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            cachedFoodItems -= old.results.length;
+        }
+        cachedFoodItems += entry.results.length;
+        evict();
+    }
+
+
+    /*
+     * Helper method to drop the least recently used entries until the cache is within its bounds
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || cachedFoodItems > maxFoodItems)
+            && iterator.hasNext()) {
+            cachedFoodItems -= iterator.next().getValue().results.length;
+            iterator.remove();
+        }
+    }
+
+} // End QueryCache class